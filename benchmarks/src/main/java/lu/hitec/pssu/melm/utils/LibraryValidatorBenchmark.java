@@ -0,0 +1,119 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures each phase of the validation of a generated library, from the bare XSD validation to the full
+ * {@link LibraryValidator#validateLibrary(String, String, String, String)} including the icon check. Throughput and sampled latency
+ * are reported for every library size; run with <code>-prof gc</code> for allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LibraryValidatorBenchmark {
+
+  private static final String LIBRARY_NAME = "synthetic.library";
+
+  private static final String VERSION = "1.0";
+
+  @Param({ "2" })
+  public int customProperties;
+
+  @Param({ "3" })
+  public int depth;
+
+  @Param({ "4" })
+  public int extensions;
+
+  @Param({ "100", "1000", "10000", "100000" })
+  public int nodeCount;
+
+  private File baseDirectory;
+
+  private CompiledSchema schema;
+
+  private File xmlFile;
+
+  @Setup(Level.Trial)
+  public void generate() throws IOException, XMLStreamException, LibraryValidatorException {
+    baseDirectory = Files.createTempDirectory("melm-benchmark").toFile();
+    xmlFile = new SyntheticLibraryGenerator(nodeCount, depth, customProperties, extensions, Math.min(nodeCount, 100), 20, 40).generate(
+        baseDirectory, LIBRARY_NAME, VERSION);
+    schema = SchemaRegistry.getBundledSchema();
+  }
+
+  @TearDown(Level.Trial)
+  public void delete() throws IOException {
+    Files.walkFileTree(baseDirectory.toPath(), new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult postVisitDirectory(final Path dir, final IOException e) throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  @Benchmark
+  public String extractLibraryTypePathFromXML() throws Exception {
+    return LibraryValidator.extractLibraryTypePathFromXML(xmlFile);
+  }
+
+  @Benchmark
+  public IconIndex scanIcons() throws IOException {
+    return IconIndex.scan(xmlFile.getParentFile());
+  }
+
+  @Benchmark
+  public File validateLibrary() throws LibraryValidatorException {
+    return LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory.getPath(), LIBRARY_NAME, VERSION);
+  }
+
+  @Benchmark
+  public LibraryDescription validateInSinglePass() throws LibraryValidatorException {
+    return LibraryValidator.validateInSinglePass(xmlFile, schema, LIBRARY_NAME, VERSION);
+  }
+
+  @Benchmark
+  public void validateNameAndVersion() throws Exception {
+    LibraryValidator.validateNameAndVersion(xmlFile, LIBRARY_NAME, VERSION);
+  }
+
+  @Benchmark
+  public void validateXMLwithXSD() throws LibraryValidatorException {
+    LibraryValidator.validateXMLwithXSD(xmlFile, schema);
+  }
+}
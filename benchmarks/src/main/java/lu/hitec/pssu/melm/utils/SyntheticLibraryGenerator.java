@@ -0,0 +1,250 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import javax.annotation.Nonnull;
+import javax.imageio.ImageIO;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Generates schema-valid libraries of arbitrary size in the <code>&lt;base&gt;/&lt;library&gt;/&lt;version&gt;</code> layout, along
+ * with the icon folders their XML references, so that the validator can be measured on more than the few hundred lines of the samples.
+ * <p>
+ * The hierarchy is filled depth first with a fan-out of <code>ceil(nodeCount^(1/depth))</code>. Every node defines a point element,
+ * hierarchy-codes are only written while they fit the 7 characters allowed by the schema, and unique-codes are spelled with letters
+ * as the schema forbids digits in them.
+ */
+public final class SyntheticLibraryGenerator {
+
+  private static final String NAMESPACE = "http://hitec.lu/pss/xsd/mapelement/hierarchy";
+
+  private static final int OPTIONS_PER_EXTENSION = 3;
+
+  private static final String[] PROPERTY_TYPES = { "string", "date", "integer" };
+
+  private final int customProperties;
+
+  private final int depth;
+
+  private final int distinctIcons;
+
+  private final int extensions;
+
+  private final int fanOut;
+
+  private final int nodeCount;
+
+  private final int[] sizes;
+
+  private int written;
+
+  /**
+   * @param distinctIcons number of icons shared round-robin by the elements, each of them present in every size folder.
+   * @param sizes sizes in pixels of the icon folders, e.g. 20 for <code>20px</code>.
+   */
+  public SyntheticLibraryGenerator(final int nodeCount, final int depth, final int customProperties, final int extensions,
+      final int distinctIcons, @Nonnull final int... sizes) {
+    assert nodeCount > 0 : "Node count is not positive";
+    assert depth > 0 : "Depth is not positive";
+    assert distinctIcons > 0 : "Icon count is not positive";
+    assert sizes.length > 0 : "No icon size";
+    this.nodeCount = nodeCount;
+    this.depth = depth;
+    this.customProperties = customProperties;
+    this.extensions = extensions;
+    this.distinctIcons = distinctIcons;
+    this.sizes = sizes.clone();
+    fanOut = Math.max(2, (int) Math.ceil(Math.pow(nodeCount, 1.0 / depth)));
+  }
+
+  /**
+   * Usage: <code>baseDirectory libraryName version nodeCount [depth [customProperties [extensions [distinctIcons]]]]</code>.
+   */
+  public static void main(final String[] args) throws IOException, XMLStreamException {
+    if (args.length < 4) {
+      System.err.println("Usage: SyntheticLibraryGenerator baseDirectory libraryName version nodeCount [depth [customProperties "
+          + "[extensions [distinctIcons]]]]");
+      System.exit(1);
+    }
+    final int nodeCount = Integer.parseInt(args[3]);
+    final int depth = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+    final int customProperties = args.length > 5 ? Integer.parseInt(args[5]) : 2;
+    final int extensions = args.length > 6 ? Integer.parseInt(args[6]) : 4;
+    final int distinctIcons = args.length > 7 ? Integer.parseInt(args[7]) : Math.min(nodeCount, 100);
+    final File xmlFile = new SyntheticLibraryGenerator(nodeCount, depth, customProperties, extensions, distinctIcons, 20, 40).generate(
+        new File(args[0]), args[1], args[2]);
+    System.out.println(xmlFile.getAbsolutePath());
+  }
+
+  private static String letters(final int index) {
+    final StringBuilder sb = new StringBuilder();
+    int value = index;
+    do {
+      sb.append((char) ('a' + value % 26));
+      value = value / 26 - 1;
+    } while (value >= 0);
+    return sb.reverse().toString();
+  }
+
+  private static byte[] png(final int size) throws IOException {
+    final BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+    final Graphics2D graphics = image.createGraphics();
+    try {
+      graphics.setColor(Color.RED);
+      graphics.fillOval(0, 0, size, size);
+    } finally {
+      graphics.dispose();
+    }
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", out);
+    return out.toByteArray();
+  }
+
+  /**
+   * Writes the library XML and its icons under <code>&lt;baseDirectory&gt;/&lt;libraryName&gt;/&lt;version&gt;</code>.
+   *
+   * @return the XML file.
+   */
+  public File generate(@Nonnull final File baseDirectory, @Nonnull final String libraryName, @Nonnull final String version)
+      throws IOException, XMLStreamException {
+    final File unzippedFolder = new File(new File(new File(baseDirectory, libraryName), version), libraryName + "-" + version);
+    if (!unzippedFolder.isDirectory() && !unzippedFolder.mkdirs()) {
+      throw new IOException(String.format("Cannot create %s", unzippedFolder));
+    }
+    writeIcons(unzippedFolder);
+    final File xmlFile = new File(unzippedFolder, libraryName + ".xml");
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(xmlFile))) {
+      writeXml(out, libraryName, version);
+    }
+    return xmlFile;
+  }
+
+  private void writeChoice(@Nonnull final XMLStreamWriter writer, final int level, final String parentCode) throws XMLStreamException {
+    writer.writeStartElement("choice");
+    writer.writeAttribute("choice-var", "Level " + level);
+    for (int i = 1; i <= fanOut && written < nodeCount; i++) {
+      final int index = written++;
+      final String code = parentCode == null ? null : parentCode + "." + i;
+      writer.writeStartElement("node");
+      if (code != null && code.length() <= 7) {
+        writer.writeAttribute("hierarchy-code", code);
+      }
+      writer.writeAttribute("unique-code", "Node_" + letters(index));
+      writer.writeAttribute("choice-value", "Value " + i);
+      writer.writeAttribute("description", "Synthetic node " + index);
+      writeElement(writer, index);
+      if (level < depth && written < nodeCount) {
+        writeChoice(writer, level + 1, code != null && code.length() <= 7 ? code : null);
+      }
+      writer.writeEndElement();
+    }
+    writer.writeEndElement();
+  }
+
+  private void writeElement(@Nonnull final XMLStreamWriter writer, final int index) throws XMLStreamException {
+    writer.writeStartElement("element");
+    writer.writeAttribute("description", "Synthetic element " + index);
+    if (extensions > 0) {
+      writer.writeEmptyElement("extension");
+      writer.writeAttribute("ref", "ext-" + index % extensions);
+      writer.writeAttribute("mandatory", Boolean.toString(index % 2 == 0));
+    }
+    writer.writeStartElement("point");
+    writer.writeEmptyElement("icon");
+    writer.writeAttribute("file", "Icon_" + letters(index % distinctIcons));
+    writer.writeAttribute("anchor", "CENTER");
+    writer.writeEndElement();
+    for (int p = 0; p < customProperties; p++) {
+      writer.writeEmptyElement("customProperty");
+      writer.writeAttribute("key", "property" + p);
+      writer.writeAttribute("type", PROPERTY_TYPES[p % PROPERTY_TYPES.length]);
+    }
+    writer.writeEndElement();
+  }
+
+  private void writeIcons(@Nonnull final File unzippedFolder) throws IOException {
+    Files.write(new File(unzippedFolder, "icon.png").toPath(), png(sizes[0]));
+    for (final int size : sizes) {
+      final byte[] png = png(size);
+      final File sizeFolder = new File(unzippedFolder, size + "px");
+      if (!sizeFolder.isDirectory() && !sizeFolder.mkdirs()) {
+        throw new IOException(String.format("Cannot create %s", sizeFolder));
+      }
+      for (int i = 0; i < distinctIcons; i++) {
+        writeIconPair(sizeFolder, "Icon_" + letters(i), png);
+      }
+      for (int i = 0; i < extensions * OPTIONS_PER_EXTENSION; i++) {
+        writeIconPair(sizeFolder, "Overlay_" + letters(i), png);
+      }
+    }
+  }
+
+  private static void writeIconPair(@Nonnull final File sizeFolder, @Nonnull final String name, @Nonnull final byte[] png)
+      throws IOException {
+    Files.write(new File(sizeFolder, name + IconIndex.PNG).toPath(), png);
+    Files.write(new File(sizeFolder, name + IconIndex.SELECTED_SUFFIX + IconIndex.PNG).toPath(), png);
+  }
+
+  private void writeXml(@Nonnull final OutputStream out, @Nonnull final String libraryName, @Nonnull final String version)
+      throws XMLStreamException {
+    final XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+    try {
+      writer.writeStartDocument("UTF-8", "1.0");
+      writer.writeStartElement("elements");
+      writer.writeDefaultNamespace(NAMESPACE);
+      writer.setDefaultNamespace(NAMESPACE);
+      writer.writeAttribute("version", "1.0");
+
+      writer.writeStartElement("description");
+      writeText(writer, "library-type", "points");
+      writeText(writer, "library-version", version);
+      writeText(writer, "library-name", libraryName);
+      writeText(writer, "library-display-name", "Synthetic " + nodeCount + " nodes");
+      writer.writeEmptyElement("library-icon");
+      writer.writeAttribute("file", "icon.png");
+      writer.writeEndElement();
+
+      written = 0;
+      writeChoice(writer, 1, "1");
+
+      int overlay = 0;
+      for (int e = 0; e < extensions; e++) {
+        writer.writeStartElement("extension");
+        writer.writeAttribute("id", "ext-" + e);
+        writer.writeAttribute("extension-var", "Extension " + e);
+        for (int o = 0; o < OPTIONS_PER_EXTENSION; o++) {
+          writer.writeStartElement("option");
+          writer.writeAttribute("extension-value", "Option " + o);
+          writer.writeAttribute("option-code", "OPT" + o);
+          writer.writeEmptyElement("overlay-icon");
+          writer.writeAttribute("file", "Overlay_" + letters(overlay++));
+          writer.writeEndElement();
+        }
+        writer.writeEndElement();
+      }
+
+      writer.writeEndElement();
+      writer.writeEndDocument();
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static void writeText(@Nonnull final XMLStreamWriter writer, @Nonnull final String name, @Nonnull final String text)
+      throws XMLStreamException {
+    writer.writeStartElement(name);
+    writer.writeCharacters(text);
+    writer.writeEndElement();
+  }
+}
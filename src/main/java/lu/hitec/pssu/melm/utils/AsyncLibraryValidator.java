@@ -0,0 +1,228 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Validates library versions asynchronously on a bounded pool with a bounded queue. A submission is rejected with a
+ * {@link LibraryValidatorException} when the queue is full rather than piling up work during upload storms.
+ * <p>
+ * Submissions for the same library name and version share a single in-flight validation: they get the same future. Flights are also
+ * keyed by a stamp of the names, modification times and sizes of every file and folder of the library, so a library whose XML or icons
+ * are replaced while being validated gets a validation of its own; the content itself is only hashed by the worker, when a cache is
+ * used. As the future is shared, cancelling it cancels the validation for every caller waiting on it.
+ */
+public final class AsyncLibraryValidator implements Closeable {
+
+  public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AsyncLibraryValidator.class);
+
+  private final String baseDirectory;
+
+  private final ValidationCache cache;
+
+  private final ThreadPoolExecutor executor;
+
+  private final ConcurrentMap<Flight, FutureTask<LibraryValidationResult>> inFlight = new ConcurrentHashMap<>();
+
+  private final CompiledSchema schema;
+
+  /**
+   * Creates a validator with one thread per available processor, a queue of {@link #DEFAULT_QUEUE_CAPACITY} and no verdict cache.
+   */
+  public AsyncLibraryValidator(@Nonnull final String xsdPath, @Nonnull final String baseDirectory) throws LibraryValidatorException {
+    this(xsdPath, baseDirectory, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY, null);
+  }
+
+  /**
+   * @param cache optional verdict cache, left open when the validator is closed.
+   */
+  public AsyncLibraryValidator(@Nonnull final String xsdPath, @Nonnull final String baseDirectory, final int threads,
+      final int queueCapacity, final ValidationCache cache) throws LibraryValidatorException {
+    this(SchemaRegistry.getSchema(xsdPath), baseDirectory, newExecutor(threads, queueCapacity), cache);
+  }
+
+  AsyncLibraryValidator(@Nonnull final CompiledSchema schema, @Nonnull final String baseDirectory,
+      @Nonnull final ThreadPoolExecutor executor, final ValidationCache cache) {
+    assert schema != null : "Schema is null";
+    assert baseDirectory != null : "Base directory is null";
+    assert executor != null : "Executor is null";
+    this.schema = schema;
+    this.baseDirectory = baseDirectory;
+    this.executor = executor;
+    this.cache = cache;
+  }
+
+  private static ThreadPoolExecutor newExecutor(final int threads, final int queueCapacity) {
+    assert threads > 0 : "Thread count is not positive";
+    assert queueCapacity > 0 : "Queue capacity is not positive";
+    final AtomicInteger threadCount = new AtomicInteger();
+    return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(@Nonnull final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "melm-validation-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        }, new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  /**
+   * Stops accepting submissions. Validations already accepted still complete.
+   */
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+
+  /**
+   * @return the number of distinct validations queued or running.
+   */
+  public int getInFlightCount() {
+    return inFlight.size();
+  }
+
+  /**
+   * Submits the validation of a library version, or joins the one in flight for the same content. The returned future does not fail:
+   * validation errors are reported by the {@link LibraryValidationResult}.
+   *
+   * @throws LibraryValidatorException when the validator is overloaded or closed.
+   */
+  public Future<LibraryValidationResult> submit(@Nonnull final String libraryName, @Nonnull final String version)
+      throws LibraryValidatorException {
+    assert libraryName != null : "Library name is null";
+    assert version != null : "Version is null";
+    final LibraryVersion libraryVersion = new LibraryVersion(libraryName, version);
+
+    // unknown versions are rejected before the lookup, which would create their folders
+    if (!LibraryValidator.resolveUnzippedDirectoryForLibraryVersion(baseDirectory, libraryName, version).isDirectory()) {
+      LibraryValidator.getMetrics().recordFailure(ValidationFailure.LIBRARY_NOT_FOUND);
+      return completed(LibraryValidationResult.failure(libraryVersion, null, new LibraryValidatorException(String.format(
+          "Library %s does not exist", libraryVersion)), 0));
+    }
+    final File xmlFile;
+    try {
+      xmlFile = LibraryValidator.findLibraryXml(baseDirectory, libraryName, version);
+    } catch (final LibraryValidatorException e) {
+      return completed(LibraryValidationResult.failure(libraryVersion, null, e, 0));
+    }
+
+    final Flight flight = new Flight(libraryVersion, stamp(xmlFile.getParentFile()));
+    final FutureTask<LibraryValidationResult> task = new FutureTask<LibraryValidationResult>(new Callable<LibraryValidationResult>() {
+      @Override
+      public LibraryValidationResult call() {
+        return LibraryValidator.validateLibraryVersion(schema, baseDirectory, libraryVersion, cache);
+      }
+    }) {
+      @Override
+      protected void done() {
+        inFlight.remove(flight, this);
+      }
+    };
+    final FutureTask<LibraryValidationResult> existing = inFlight.putIfAbsent(flight, task);
+    if (existing != null) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(String.format("Joining the validation in flight for %s", libraryVersion));
+      }
+      return existing;
+    }
+    try {
+      executor.execute(task);
+    } catch (final RejectedExecutionException e) {
+      inFlight.remove(flight, task);
+      final String msg;
+      if (executor.isShutdown()) {
+        msg = String.format("Validation of %s rejected: the validator is closed", libraryVersion);
+      } else {
+        msg = String.format("Validation of %s rejected: %d validations are already waiting", libraryVersion, executor.getQueue().size());
+      }
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(msg);
+      }
+      throw new LibraryValidatorException(msg, e);
+    }
+    return task;
+  }
+
+  /**
+   * @return a stamp of the names, modification times and sizes of the files and folders under the given folder, read without opening
+   *         any file.
+   */
+  private static long stamp(@Nonnull final File folder) {
+    long stamp = folder.lastModified();
+    final File[] children = folder.listFiles();
+    if (children == null) {
+      return stamp;
+    }
+    Arrays.sort(children);
+    for (final File child : children) {
+      stamp = 31 * stamp + child.getName().hashCode();
+      stamp = 31 * stamp + (child.isDirectory() ? stamp(child) : 31 * child.lastModified() + child.length());
+    }
+    return stamp;
+  }
+
+  private static Future<LibraryValidationResult> completed(@Nonnull final LibraryValidationResult result) {
+    final FutureTask<LibraryValidationResult> task = new FutureTask<>(new Callable<LibraryValidationResult>() {
+      @Override
+      public LibraryValidationResult call() {
+        return result;
+      }
+    });
+    task.run();
+    return task;
+  }
+
+  /**
+   * Identity of a validation: library version and a stamp of the library files.
+   */
+  private static final class Flight {
+
+    private final LibraryVersion libraryVersion;
+
+    private final long stamp;
+
+    Flight(@Nonnull final LibraryVersion libraryVersion, final long stamp) {
+      this.libraryVersion = libraryVersion;
+      this.stamp = stamp;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Flight)) {
+        return false;
+      }
+      final Flight other = (Flight) obj;
+      return libraryVersion.equals(other.libraryVersion) && stamp == other.stamp;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * libraryVersion.hashCode() + (int) (stamp ^ (stamp >>> 32));
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package lu.hitec.pssu.melm.utils;
+
+import javax.annotation.Nonnull;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+import javax.xml.validation.ValidatorHandler;
+
+/**
+ * A schema compiled once by the {@link SchemaRegistry}. The {@link Schema} itself is thread-safe and shared, validators and
+ * validator handlers are not and are therefore handed out per thread.
+ */
+public final class CompiledSchema {
+
+  private final String fingerprint;
+
+  private final Schema schema;
+
+  private final String stamp;
+
+  private final ThreadLocal<Validator> validators = new ThreadLocal<Validator>() {
+    @Override
+    protected Validator initialValue() {
+      final Validator validator = schema.newValidator();
+      XmlParsers.configure(validator);
+      return validator;
+    }
+  };
+
+  private final ThreadLocal<ValidatorHandler> validatorHandlers = new ThreadLocal<ValidatorHandler>() {
+    @Override
+    protected ValidatorHandler initialValue() {
+      final ValidatorHandler validatorHandler = schema.newValidatorHandler();
+      XmlParsers.configure(validatorHandler);
+      return validatorHandler;
+    }
+  };
+
+  CompiledSchema(@Nonnull final Schema schema, @Nonnull final String fingerprint, @Nonnull final String stamp) {
+    assert schema != null : "Schema is null";
+    assert fingerprint != null : "Fingerprint is null";
+    assert stamp != null : "Stamp is null";
+    this.schema = schema;
+    this.fingerprint = fingerprint;
+    this.stamp = stamp;
+  }
+
+  /**
+   * @return the SHA-1 of the XSD content the schema was compiled from.
+   */
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * @return the validator bound to the calling thread, it must not be handed over to another thread.
+   */
+  public Validator getValidator() {
+    // not reset: nothing but the configuration of XmlParsers is ever set on it, and reset would drop the external access restrictions
+    return validators.get();
+  }
+
+  /**
+   * @return the streaming validator bound to the calling thread, it must not be handed over to another thread.
+   */
+  public ValidatorHandler getValidatorHandler() {
+    return validatorHandlers.get();
+  }
+
+  String getStamp() {
+    return stamp;
+  }
+}
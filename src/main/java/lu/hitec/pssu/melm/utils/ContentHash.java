@@ -0,0 +1,68 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.annotation.Nonnull;
+
+final class ContentHash {
+
+  private static final String ALGORITHM = "SHA-1";
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private ContentHash() {
+  }
+
+  static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(ALGORITHM);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(String.format("%s is not available", ALGORITHM), e);
+    }
+  }
+
+  static String hash(@Nonnull final byte[] bytes) {
+    assert bytes != null : "Bytes are null";
+    return toHex(newDigest().digest(bytes));
+  }
+
+  static String hash(@Nonnull final File file) throws IOException {
+    assert file != null : "File is null";
+    final MessageDigest digest = newDigest();
+    update(digest, file);
+    return toHex(digest.digest());
+  }
+
+  static void update(@Nonnull final MessageDigest digest, @Nonnull final File file) throws IOException {
+    assert digest != null : "Digest is null";
+    assert file != null : "File is null";
+    try (InputStream in = new FileInputStream(file)) {
+      update(digest, in);
+    }
+  }
+
+  static void update(@Nonnull final MessageDigest digest, @Nonnull final InputStream in) throws IOException {
+    assert digest != null : "Digest is null";
+    assert in != null : "Input stream is null";
+    final byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      digest.update(buffer, 0, read);
+    }
+  }
+
+  static String toHex(@Nonnull final byte[] bytes) {
+    assert bytes != null : "Bytes are null";
+    final char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+      chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+    }
+    return new String(chars);
+  }
+}
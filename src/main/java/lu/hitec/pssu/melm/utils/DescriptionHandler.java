@@ -0,0 +1,185 @@
+package lu.hitec.pssu.melm.utils;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Streaming handler collecting the <code>description</code> header of a library XML. When an expected library name and version are
+ * given, they are checked as soon as the corresponding elements are read.
+ * <p>
+ * In header-only mode the library type is checked as well when one is expected, the types allowed being left to the schema, and the
+ * parse is aborted with a {@link HeaderReadException} once the
+ * header has been read.
+ * <p>
+ * A header that does not match the expected values is rejected with a {@link DescriptionMismatchException}.
+ */
+class DescriptionHandler extends DefaultHandler {
+
+  static final String INCORRECT_LIBRARY_TYPE = "Incorrect Library type in xml";
+
+  private String currentlyProcessedNode = "";
+
+  private int depth;
+
+  private boolean inDescription;
+
+  private final String expectedLibraryName;
+
+  private final String expectedLibraryType;
+
+  private final String expectedVersion;
+
+  private final boolean headerOnly;
+
+  private String libraryDisplayName;
+
+  private String libraryIcon;
+
+  private String libraryName;
+
+  private String libraryType;
+
+  private String libraryVersion;
+
+  private int nodeCount;
+
+  private final StringBuilder text = new StringBuilder();
+
+  DescriptionHandler() {
+    this(null, null);
+  }
+
+  DescriptionHandler(final String expectedLibraryName, final String expectedVersion) {
+    this(expectedLibraryName, expectedVersion, false, null);
+  }
+
+  /**
+   * @param expectedLibraryType library type required in header-only mode, null to leave the library type to the schema.
+   */
+  DescriptionHandler(final String expectedLibraryName, final String expectedVersion, final boolean headerOnly,
+      final String expectedLibraryType) {
+    this.expectedLibraryName = expectedLibraryName;
+    this.expectedVersion = expectedVersion;
+    this.headerOnly = headerOnly;
+    this.expectedLibraryType = expectedLibraryType;
+  }
+
+  @Override
+  public void characters(final char ch[], final int start, final int length) throws SAXException {
+    if (!currentlyProcessedNode.isEmpty()) {
+      text.append(ch, start, length);
+    }
+  }
+
+  @Override
+  public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+    depth--;
+    if (inDescription && depth == 1) {
+      inDescription = false;
+      if (headerOnly) {
+        throw new HeaderReadException();
+      }
+    } else if (!currentlyProcessedNode.isEmpty()) {
+      final String value = text.toString();
+      switch (currentlyProcessedNode) {
+      case "library-type":
+        libraryType = value;
+        if (headerOnly && expectedLibraryType != null && !expectedLibraryType.equals(value)) {
+          throw new DescriptionMismatchException(ValidationFailure.LIBRARY_TYPE_MISMATCH, INCORRECT_LIBRARY_TYPE);
+        }
+        break;
+      case "library-version":
+        libraryVersion = value;
+        if (expectedVersion != null && !expectedVersion.endsWith(value)) {
+          throw new DescriptionMismatchException(ValidationFailure.DESCRIPTION_MISMATCH, "Incorrect Library version in xml");
+        }
+        break;
+      case "library-name":
+        libraryName = value;
+        if (expectedLibraryName != null && !expectedLibraryName.endsWith(value)) {
+          throw new DescriptionMismatchException(ValidationFailure.DESCRIPTION_MISMATCH, "Incorrect Library name in xml");
+        }
+        break;
+      case "library-display-name":
+        libraryDisplayName = value;
+        break;
+      default:
+        break;
+      }
+    }
+    currentlyProcessedNode = "";
+  }
+
+  /**
+   * @return the number of hierarchy nodes read so far.
+   */
+  int getNodeCount() {
+    return nodeCount;
+  }
+
+  LibraryDescription getDescription() {
+    return new LibraryDescription(libraryType, libraryVersion, libraryName, libraryDisplayName, libraryIcon);
+  }
+
+  @Override
+  public void startElement(final String uri, final String localName, final String qName, final Attributes attributes)
+      throws SAXException {
+    final String name = localName.isEmpty() ? qName : localName;
+    depth++;
+    currentlyProcessedNode = "";
+    if ("node".equals(name)) {
+      nodeCount++;
+    }
+    if (depth == 2 && "description".equals(name)) {
+      inDescription = true;
+    } else if (inDescription && depth == 3) {
+      if ("library-icon".equals(name)) {
+        libraryIcon = attributes.getValue("file");
+      } else {
+        currentlyProcessedNode = name;
+        text.setLength(0);
+      }
+    }
+  }
+
+  /**
+   * Thrown in header-only mode to stop the parse once the header has been read. It carries no stack trace.
+   */
+  static final class HeaderReadException extends SAXException {
+
+    private static final long serialVersionUID = 1L;
+
+    HeaderReadException() {
+      super("Library header read");
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  /**
+   * Thrown when the library name, version or type of the header does not match the expected one. It is unchecked so that it goes
+   * through the parser unwrapped.
+   */
+  static final class DescriptionMismatchException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ValidationFailure failure;
+
+    DescriptionMismatchException(final ValidationFailure failure, final String message) {
+      super(message);
+      this.failure = failure;
+    }
+
+    /**
+     * @return the failure to record for the mismatch.
+     */
+    ValidationFailure getFailure() {
+      return failure;
+    }
+  }
+}
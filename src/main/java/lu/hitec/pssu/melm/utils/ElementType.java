@@ -0,0 +1,12 @@
+package lu.hitec.pssu.melm.utils;
+
+/**
+ * Map element type defined by the <code>element</code> of a node.
+ */
+public enum ElementType {
+  /** The node defines no element, it only leads to further choices. */
+  NONE,
+  POINT,
+  LINE,
+  AREA
+}
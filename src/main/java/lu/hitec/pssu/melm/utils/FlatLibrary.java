@@ -0,0 +1,227 @@
+package lu.hitec.pssu.melm.utils;
+
+/**
+ * Read access to a library hierarchy stored as flat tables of ints referencing a string table, rather than as a tree of objects.
+ * <p>
+ * Nodes are numbered in document order. Every node row holds {@link #NODE_COLUMNS} ints, icon, custom property, extension and option
+ * rows are laid out the same way. String references are indexes into the string table, <code>-1</code> standing for an absent value.
+ */
+public abstract class FlatLibrary {
+
+  static final int NODE_PARENT = 0;
+
+  static final int NODE_FIRST_CHILD = 1;
+
+  static final int NODE_NEXT_SIBLING = 2;
+
+  static final int NODE_UNIQUE_CODE = 3;
+
+  static final int NODE_HIERARCHY_CODE = 4;
+
+  static final int NODE_CHOICE_VAR = 5;
+
+  static final int NODE_CHOICE_VALUE = 6;
+
+  static final int NODE_DESCRIPTION = 7;
+
+  static final int NODE_ELEMENT_TYPE = 8;
+
+  static final int NODE_ELEMENT_DESCRIPTION = 9;
+
+  static final int NODE_EXTENSION_REF = 10;
+
+  static final int NODE_EXTENSION_MANDATORY = 11;
+
+  static final int NODE_FIRST_ICON = 12;
+
+  static final int NODE_ICON_COUNT = 13;
+
+  static final int NODE_FIRST_PROPERTY = 14;
+
+  static final int NODE_PROPERTY_COUNT = 15;
+
+  static final int NODE_COLUMNS = 16;
+
+  static final int ICON_ROLE = 0;
+
+  static final int ICON_FILE = 1;
+
+  static final int ICON_ANCHOR = 2;
+
+  static final int ICON_COLUMNS = 3;
+
+  static final int PROPERTY_KEY = 0;
+
+  static final int PROPERTY_TYPE = 1;
+
+  static final int PROPERTY_COLUMNS = 2;
+
+  static final int EXTENSION_ID = 0;
+
+  static final int EXTENSION_VAR = 1;
+
+  static final int EXTENSION_FIRST_OPTION = 2;
+
+  static final int EXTENSION_OPTION_COUNT = 3;
+
+  static final int EXTENSION_COLUMNS = 4;
+
+  static final int OPTION_VALUE = 0;
+
+  static final int OPTION_CODE = 1;
+
+  static final int OPTION_DESCRIPTION = 2;
+
+  static final int OPTION_OVERLAY_ICON = 3;
+
+  static final int OPTION_COLUMNS = 4;
+
+  private static final ElementType[] ELEMENT_TYPES = ElementType.values();
+
+  public String getChoiceValue(final int node) {
+    return string(node(node, NODE_CHOICE_VALUE));
+  }
+
+  /**
+   * @return the <code>choice-var</code> of the choice the node belongs to.
+   */
+  public String getChoiceVar(final int node) {
+    return string(node(node, NODE_CHOICE_VAR));
+  }
+
+  public int getCustomPropertyCount(final int node) {
+    return node(node, NODE_PROPERTY_COUNT);
+  }
+
+  public String getCustomPropertyKey(final int node, final int property) {
+    return string(property(node(node, NODE_FIRST_PROPERTY) + property, PROPERTY_KEY));
+  }
+
+  public String getCustomPropertyType(final int node, final int property) {
+    return string(property(node(node, NODE_FIRST_PROPERTY) + property, PROPERTY_TYPE));
+  }
+
+  public String getElementDescription(final int node) {
+    return string(node(node, NODE_ELEMENT_DESCRIPTION));
+  }
+
+  public ElementType getElementType(final int node) {
+    return ELEMENT_TYPES[node(node, NODE_ELEMENT_TYPE)];
+  }
+
+  public abstract int getExtensionCount();
+
+  public String getExtensionId(final int extension) {
+    return string(extension(extension, EXTENSION_ID));
+  }
+
+  /**
+   * @return the <code>ref</code> of the extension of the node element, null if it has none.
+   */
+  public String getExtensionRef(final int node) {
+    return string(node(node, NODE_EXTENSION_REF));
+  }
+
+  public String getExtensionVar(final int extension) {
+    return string(extension(extension, EXTENSION_VAR));
+  }
+
+  /**
+   * @return the first child node, -1 for a leaf.
+   */
+  public int getFirstChild(final int node) {
+    return node(node, NODE_FIRST_CHILD);
+  }
+
+  /**
+   * @return the first node of the root choice, its siblings being the other root nodes, -1 for an empty library.
+   */
+  public int getFirstRootNode() {
+    return getNodeCount() == 0 ? -1 : 0;
+  }
+
+  public String getHierarchyCode(final int node) {
+    return string(node(node, NODE_HIERARCHY_CODE));
+  }
+
+  public String getIconAnchor(final int node, final int icon) {
+    return string(icon(node(node, NODE_FIRST_ICON) + icon, ICON_ANCHOR));
+  }
+
+  public int getIconCount(final int node) {
+    return node(node, NODE_ICON_COUNT);
+  }
+
+  public String getIconFile(final int node, final int icon) {
+    return string(icon(node(node, NODE_FIRST_ICON) + icon, ICON_FILE));
+  }
+
+  /**
+   * @return the element name of the icon, <code>icon</code>, <code>line-point-icon</code>, <code>center-icon</code>...
+   */
+  public String getIconRole(final int node, final int icon) {
+    return string(icon(node(node, NODE_FIRST_ICON) + icon, ICON_ROLE));
+  }
+
+  public abstract LibraryDescription getLibraryDescription();
+
+  /**
+   * @return the next node sharing the same parent, -1 for the last one.
+   */
+  public int getNextSibling(final int node) {
+    return node(node, NODE_NEXT_SIBLING);
+  }
+
+  public abstract int getNodeCount();
+
+  public String getNodeDescription(final int node) {
+    return string(node(node, NODE_DESCRIPTION));
+  }
+
+  public int getOptionCount(final int extension) {
+    return extension(extension, EXTENSION_OPTION_COUNT);
+  }
+
+  public String getOptionCode(final int extension, final int option) {
+    return string(option(extension(extension, EXTENSION_FIRST_OPTION) + option, OPTION_CODE));
+  }
+
+  public String getOptionDescription(final int extension, final int option) {
+    return string(option(extension(extension, EXTENSION_FIRST_OPTION) + option, OPTION_DESCRIPTION));
+  }
+
+  public String getOptionOverlayIcon(final int extension, final int option) {
+    return string(option(extension(extension, EXTENSION_FIRST_OPTION) + option, OPTION_OVERLAY_ICON));
+  }
+
+  public String getOptionValue(final int extension, final int option) {
+    return string(option(extension(extension, EXTENSION_FIRST_OPTION) + option, OPTION_VALUE));
+  }
+
+  /**
+   * @return the parent node, -1 for the nodes of the root choice.
+   */
+  public int getParent(final int node) {
+    return node(node, NODE_PARENT);
+  }
+
+  public String getUniqueCode(final int node) {
+    return string(node(node, NODE_UNIQUE_CODE));
+  }
+
+  public boolean isExtensionMandatory(final int node) {
+    return node(node, NODE_EXTENSION_MANDATORY) != 0;
+  }
+
+  abstract int extension(int extension, int column);
+
+  abstract int icon(int icon, int column);
+
+  abstract int node(int node, int column);
+
+  abstract int option(int option, int column);
+
+  abstract int property(int property, int column);
+
+  abstract String string(int index);
+}
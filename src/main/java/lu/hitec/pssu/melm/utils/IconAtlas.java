@@ -0,0 +1,389 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+import javax.imageio.ImageIO;
+import javax.xml.parsers.ParserConfigurationException;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Sprite atlas packing the icons of a library that belong to one size variant folder (<code>20px</code>, <code>40px</code>...) into
+ * a single PNG, so that clients fetch one image instead of every icon and its <code>_selected</code> variant. Icons outside of the size
+ * folders, such as the library icon, go to the {@link #DEFAULT_ATLAS}.
+ * <p>
+ * Each atlas is written as <code>&lt;name&gt;.png</code> next to its index <code>&lt;name&gt;.atlas</code>, a text file whose first
+ * line holds the image name and size and every other line an icon path, relative to the size folder, and its rectangle, separated by
+ * tabs. Icons are laid out on shelves by decreasing height; only their PNG header is read for the layout, the images being decoded
+ * one at a time while drawing.
+ * <p>
+ * An icon of a size folder must be as large as the folder says (<code>20px</code> holds 20x20 icons), and no atlas may exceed
+ * {@link #MAX_SIZE} pixels on a side, which is checked before the atlas image is allocated.
+ */
+public final class IconAtlas {
+
+  public static final String DEFAULT_ATLAS = "default";
+
+  /** Folder of the atlases, in the directory of the library version. */
+  public static final String FOLDER = "atlas";
+
+  public static final String INDEX_EXTENSION = ".atlas";
+
+  /** Largest width and height of an atlas image, in pixels. */
+  public static final int MAX_SIZE = 4096;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(IconAtlas.class);
+
+  private static final int PADDING = 1;
+
+  private final int height;
+
+  private final File imageFile;
+
+  private final String name;
+
+  private final Map<String, Region> regions;
+
+  private final int width;
+
+  private IconAtlas(@Nonnull final String name, @Nonnull final File imageFile, final int width, final int height,
+      @Nonnull final Map<String, Region> regions) {
+    this.name = name;
+    this.imageFile = imageFile;
+    this.width = width;
+    this.height = height;
+    this.regions = Collections.unmodifiableMap(regions);
+  }
+
+  /**
+   * Builds the atlases of the icons referenced by a library XML, which is expected to be valid.
+   */
+  public static List<IconAtlas> generate(@Nonnull final File xmlFile, @Nonnull final File outputFolder)
+      throws LibraryValidatorException {
+    assert xmlFile != null : "Xml file is null";
+    assert outputFolder != null : "Output folder is null";
+    final IconReferenceHandler icons = new IconReferenceHandler();
+    try {
+      XmlParsers.getXMLReader(icons).parse(xmlFile.toURI().toString());
+    } catch (final ParserConfigurationException | SAXException | IOException e) {
+      throw new LibraryValidatorException(String.format("Error in reading %s: %s", xmlFile.getName(), e.getMessage()), e);
+    }
+    return generate(xmlFile, icons, outputFolder);
+  }
+
+  static List<IconAtlas> generate(@Nonnull final File xmlFile, @Nonnull final IconReferenceHandler icons,
+      @Nonnull final File outputFolder) throws LibraryValidatorException {
+    final File libraryFolder = xmlFile.getParentFile();
+    final Map<String, List<Icon>> atlases = new TreeMap<>();
+    final List<String> invalid = new ArrayList<>();
+    final Set<String> seen = new HashSet<>();
+    try {
+      final IconIndex index = IconIndex.scan(libraryFolder);
+      final List<String> references = new ArrayList<>(icons.getIconFiles());
+      if (icons.getLibraryIcon() != null) {
+        references.add(icons.getLibraryIcon());
+      }
+      for (final String reference : references) {
+        for (final String path : index.resolve(reference)) {
+          if (!path.endsWith(IconIndex.PNG) || !index.contains(path) || !seen.add(path)) {
+            continue;
+          }
+          final int slash = path.indexOf('/');
+          final String folder = slash > 0 ? path.substring(0, slash) : null;
+          final boolean sized = folder != null && index.getSizeFolders().contains(folder);
+          final String atlasName = sized ? folder : DEFAULT_ATLAS;
+          List<Icon> atlasIcons = atlases.get(atlasName);
+          if (atlasIcons == null) {
+            atlasIcons = new ArrayList<>();
+            atlases.put(atlasName, atlasIcons);
+          }
+          final PngHeader header;
+          try {
+            header = PngHeader.read(new File(libraryFolder, path));
+          } catch (final IOException e) {
+            invalid.add(String.format("%s (%s)", path, e.getMessage()));
+            continue;
+          }
+          if (header.getWidth() > MAX_SIZE || header.getHeight() > MAX_SIZE) {
+            invalid.add(String.format("%s (%dx%d is larger than an atlas)", path, header.getWidth(), header.getHeight()));
+          } else if (sized && (header.getWidth() != header.getHeight() || !folder.equals(header.getWidth() + "px"))) {
+            invalid.add(String.format("%s (%dx%d in a %s folder)", path, header.getWidth(), header.getHeight(), folder));
+          } else {
+            atlasIcons.add(new Icon(sized ? path.substring(slash + 1) : path, new File(libraryFolder, path), header));
+          }
+        }
+      }
+    } catch (final IOException e) {
+      throw new LibraryValidatorException(String.format("Error in indexing icons of %s: %s", libraryFolder, e.getMessage()), e);
+    }
+    if (!invalid.isEmpty()) {
+      throw new LibraryValidatorException(String.format("Icons cannot be packed: %s", invalid));
+    }
+
+    if (!outputFolder.isDirectory() && !outputFolder.mkdirs()) {
+      throw new LibraryValidatorException(String.format("Failed to create %s", outputFolder.getAbsolutePath()));
+    }
+    final List<IconAtlas> result = new ArrayList<>(atlases.size());
+    for (final Map.Entry<String, List<Icon>> entry : atlases.entrySet()) {
+      result.add(pack(entry.getKey(), entry.getValue(), outputFolder));
+    }
+    return result;
+  }
+
+  /**
+   * Reads the index of an atlas.
+   */
+  public static IconAtlas read(@Nonnull final File indexFile) throws LibraryValidatorException {
+    assert indexFile != null : "Index file is null";
+    try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+      final String header = reader.readLine();
+      if (header == null) {
+        throw new LibraryValidatorException(String.format("Atlas index %s is empty", indexFile.getAbsolutePath()));
+      }
+      final String[] image = header.split("\t");
+      final Map<String, Region> regions = new LinkedHashMap<>();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final String[] fields = line.split("\t");
+        regions.put(fields[0], new Region(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), Integer
+            .parseInt(fields[4])));
+      }
+      final String fileName = indexFile.getName();
+      return new IconAtlas(fileName.substring(0, fileName.length() - INDEX_EXTENSION.length()), new File(indexFile.getParentFile(),
+          image[0]), Integer.parseInt(image[1]), Integer.parseInt(image[2]), regions);
+    } catch (final IOException | RuntimeException e) {
+      throw new LibraryValidatorException(String.format("Error in reading atlas index %s: %s", indexFile.getAbsolutePath(),
+          e.getMessage()), e);
+    }
+  }
+
+  private static IconAtlas pack(@Nonnull final String name, @Nonnull final List<Icon> icons, @Nonnull final File outputFolder)
+      throws LibraryValidatorException {
+    Collections.sort(icons, new Comparator<Icon>() {
+      @Override
+      public int compare(final Icon a, final Icon b) {
+        if (a.header.getHeight() != b.header.getHeight()) {
+          return b.header.getHeight() - a.header.getHeight();
+        }
+        if (a.header.getWidth() != b.header.getWidth()) {
+          return b.header.getWidth() - a.header.getWidth();
+        }
+        return a.path.compareTo(b.path);
+      }
+    });
+
+    long area = 0;
+    int maxWidth = 0;
+    for (final Icon icon : icons) {
+      area += (long) (icon.header.getWidth() + PADDING) * (icon.header.getHeight() + PADDING);
+      maxWidth = Math.max(maxWidth, icon.header.getWidth());
+    }
+    // icons are at most MAX_SIZE wide, so are the shelves
+    final int shelfWidth = Math.max(maxWidth, (int) Math.min(MAX_SIZE, Math.ceil(Math.sqrt(area))));
+    final Map<String, Region> regions = new LinkedHashMap<>();
+    int x = 0;
+    int y = 0;
+    int shelfHeight = 0;
+    int width = 0;
+    for (final Icon icon : icons) {
+      if (x > 0 && x + icon.header.getWidth() > shelfWidth) {
+        y += shelfHeight + PADDING;
+        x = 0;
+        shelfHeight = 0;
+      }
+      if (y + icon.header.getHeight() > MAX_SIZE) {
+        throw new LibraryValidatorException(String.format("Icons of %s do not fit in a %dx%d atlas", name, MAX_SIZE, MAX_SIZE));
+      }
+      regions.put(icon.path, new Region(x, y, icon.header.getWidth(), icon.header.getHeight()));
+      width = Math.max(width, x + icon.header.getWidth());
+      shelfHeight = Math.max(shelfHeight, icon.header.getHeight());
+      x += icon.header.getWidth() + PADDING;
+    }
+    final int height = y + shelfHeight;
+
+    final File imageFile = new File(outputFolder, name + IconIndex.PNG);
+    final File indexFile = new File(outputFolder, name + INDEX_EXTENSION);
+    try {
+      final BufferedImage atlas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      final Graphics2D graphics = atlas.createGraphics();
+      try {
+        for (final Icon icon : icons) {
+          final BufferedImage image = ImageIO.read(icon.file);
+          if (image == null || image.getWidth() != icon.header.getWidth() || image.getHeight() != icon.header.getHeight()) {
+            throw new LibraryValidatorException(String.format("Icon %s cannot be decoded as announced by its header", icon.file));
+          }
+          final Region region = regions.get(icon.path);
+          graphics.drawImage(image, region.getX(), region.getY(), null);
+        }
+      } finally {
+        graphics.dispose();
+      }
+      final File tmp = new File(outputFolder, name + IconIndex.PNG + ".tmp");
+      if (!ImageIO.write(atlas, "png", tmp)) {
+        throw new IOException("No PNG writer is available");
+      }
+      Files.move(tmp.toPath(), imageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      writeIndex(indexFile, imageFile.getName(), width, height, regions);
+    } catch (final IOException e) {
+      throw new LibraryValidatorException(String.format("Error in writing atlas %s: %s", imageFile.getAbsolutePath(), e.getMessage()),
+          e);
+    }
+
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(String.format("Packed %d icons into %s (%dx%d)", icons.size(), imageFile.getAbsolutePath(), width, height));
+    }
+    return new IconAtlas(name, imageFile, width, height, regions);
+  }
+
+  private static void writeIndex(@Nonnull final File indexFile, @Nonnull final String imageName, final int width, final int height,
+      @Nonnull final Map<String, Region> regions) throws IOException {
+    final File tmp = new File(indexFile.getPath() + ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+      writer.write(String.format("%s\t%d\t%d", imageName, width, height));
+      writer.newLine();
+      for (final Map.Entry<String, Region> entry : regions.entrySet()) {
+        final Region region = entry.getValue();
+        writer.write(String.format("%s\t%d\t%d\t%d\t%d", entry.getKey(), region.getX(), region.getY(), region.getWidth(),
+            region.getHeight()));
+        writer.newLine();
+      }
+    }
+    Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public File getImageFile() {
+    return imageFile;
+  }
+
+  /**
+   * @return the name of the size folder of the icons, or {@link #DEFAULT_ATLAS}.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the region of the given icon, by path relative to the size folder (<code>Accident_selected.png</code>), null when it is not
+   *         in this atlas.
+   */
+  public Region getRegion(@Nonnull final String iconPath) {
+    assert iconPath != null : "Icon path is null";
+    return regions.get(iconPath);
+  }
+
+  /**
+   * @return the regions of the icons by path relative to the size folder, tallest icons first.
+   */
+  public Map<String, Region> getRegions() {
+    return regions;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s %dx%d (%d icons)", name, width, height, regions.size());
+  }
+
+  /**
+   * Rectangle of an icon in the atlas image.
+   */
+  public static final class Region {
+
+    private final int height;
+
+    private final int width;
+
+    private final int x;
+
+    private final int y;
+
+    Region(final int x, final int y, final int width, final int height) {
+      this.x = x;
+      this.y = y;
+      this.width = width;
+      this.height = height;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Region)) {
+        return false;
+      }
+      final Region other = (Region) obj;
+      return x == other.x && y == other.y && width == other.width && height == other.height;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getX() {
+      return x;
+    }
+
+    public int getY() {
+      return y;
+    }
+
+    @Override
+    public int hashCode() {
+      return ((x * 31 + y) * 31 + width) * 31 + height;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%dx%d+%d+%d", width, height, x, y);
+    }
+  }
+
+  private static final class Icon {
+
+    private final File file;
+
+    private final PngHeader header;
+
+    private final String path;
+
+    private Icon(@Nonnull final String path, @Nonnull final File file, @Nonnull final PngHeader header) {
+      this.path = path;
+      this.file = file;
+      this.header = header;
+    }
+  }
+}
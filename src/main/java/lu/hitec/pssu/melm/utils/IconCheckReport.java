@@ -0,0 +1,47 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Outcome of checking the icon references of a library against its files, as paths relative to the library folder.
+ */
+public final class IconCheckReport {
+
+  private final Set<String> missing;
+
+  private final Set<String> orphaned;
+
+  IconCheckReport(@Nonnull final Set<String> missing, @Nonnull final Set<String> orphaned) {
+    assert missing != null : "Missing is null";
+    assert orphaned != null : "Orphaned is null";
+    this.missing = Collections.unmodifiableSet(new TreeSet<>(missing));
+    this.orphaned = Collections.unmodifiableSet(new TreeSet<>(orphaned));
+  }
+
+  /**
+   * @return the files referenced by the XML which do not exist, sorted.
+   */
+  public Set<String> getMissing() {
+    return missing;
+  }
+
+  /**
+   * @return the files of the library which no icon reference designates, sorted.
+   */
+  public Set<String> getOrphaned() {
+    return orphaned;
+  }
+
+  public boolean isComplete() {
+    return missing.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("IconCheckReport [missing=%s, orphaned=%s]", missing, orphaned);
+  }
+}
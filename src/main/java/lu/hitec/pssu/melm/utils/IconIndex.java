@@ -0,0 +1,153 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Index of the files of a library, as paths relative to the folder holding the library XML and separated by <code>/</code>.
+ * <p>
+ * An icon reference holding a path or an extension (<code>SymbolsPOI/POI.png</code>) designates that very file. A bare name
+ * (<code>Accident</code>) designates a PNG and its <code>_selected</code> variant, to be provided in every size variant folder
+ * (<code>20px/Accident.png</code>, <code>20px/Accident_selected.png</code>, <code>40px/Accident.png</code>...), or at the root of the
+ * library when it has no size variant folder.
+ * <p>
+ * The index is a hash set, so that resolving a reference costs no file system access.
+ */
+final class IconIndex {
+
+  static final String PNG = ".png";
+
+  static final String SELECTED_SUFFIX = "_selected";
+
+  private static final Pattern SIZE_FOLDER = Pattern.compile("[0-9]+px");
+
+  private final Set<String> paths;
+
+  private final List<String> sizeFolders;
+
+  IconIndex(@Nonnull final Collection<String> relativePaths) {
+    assert relativePaths != null : "Relative paths are null";
+    paths = new HashSet<>(relativePaths.size() * 2);
+    final Set<String> folders = new TreeSet<>();
+    for (final String relativePath : relativePaths) {
+      final String path = normalize(relativePath);
+      paths.add(path);
+      final int slash = path.indexOf('/');
+      if (slash > 0 && SIZE_FOLDER.matcher(path.substring(0, slash)).matches()) {
+        folders.add(path.substring(0, slash));
+      }
+    }
+    sizeFolders = Collections.unmodifiableList(new ArrayList<>(folders));
+  }
+
+  /**
+   * Indexes every file below the library folder in a single walk.
+   */
+  static IconIndex scan(@Nonnull final File libraryFolder) throws IOException {
+    assert libraryFolder != null : "Library folder is null";
+    final Path root = libraryFolder.toPath();
+    final List<String> relativePaths = new ArrayList<>();
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+        if (attrs.isRegularFile()) {
+          relativePaths.add(root.relativize(file).toString());
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return new IconIndex(relativePaths);
+  }
+
+  static boolean isBareName(@Nonnull final String reference) {
+    return reference.indexOf('/') < 0 && reference.indexOf('\\') < 0 && reference.indexOf('.') < 0;
+  }
+
+  static String normalize(@Nonnull final String path) {
+    String normalized = path.replace('\\', '/');
+    while (normalized.startsWith("./")) {
+      normalized = normalized.substring(2);
+    }
+    while (normalized.startsWith("/")) {
+      normalized = normalized.substring(1);
+    }
+    return normalized;
+  }
+
+  boolean contains(@Nonnull final String relativePath) {
+    return paths.contains(normalize(relativePath));
+  }
+
+  /**
+   * Checks all the references at once: the referenced files not found in the index are missing, the indexed files referenced by none
+   * of them (the XML files apart) are orphaned.
+   */
+  IconCheckReport check(final String libraryIcon, @Nonnull final Collection<String> iconFiles) {
+    assert iconFiles != null : "Icon files are null";
+    final Set<String> missing = new TreeSet<>();
+    final Set<String> referenced = new HashSet<>(paths.size() * 2);
+    if (libraryIcon != null) {
+      collect(libraryIcon, missing, referenced);
+    }
+    for (final String iconFile : iconFiles) {
+      collect(iconFile, missing, referenced);
+    }
+
+    final Set<String> orphaned = new TreeSet<>();
+    for (final String path : paths) {
+      if (!referenced.contains(path) && !path.endsWith(".xml")) {
+        orphaned.add(path);
+      }
+    }
+    return new IconCheckReport(missing, orphaned);
+  }
+
+  List<String> getSizeFolders() {
+    return sizeFolders;
+  }
+
+  /**
+   * @return the files an icon reference designates.
+   */
+  List<String> resolve(@Nonnull final String reference) {
+    assert reference != null : "Reference is null";
+    if (!isBareName(reference)) {
+      return Collections.singletonList(normalize(reference));
+    }
+    if (sizeFolders.isEmpty()) {
+      return Arrays.asList(reference + PNG, reference + SELECTED_SUFFIX + PNG);
+    }
+    final List<String> resolved = new ArrayList<>(sizeFolders.size() * 2);
+    for (final String sizeFolder : sizeFolders) {
+      resolved.add(sizeFolder + "/" + reference + PNG);
+      resolved.add(sizeFolder + "/" + reference + SELECTED_SUFFIX + PNG);
+    }
+    return resolved;
+  }
+
+  private void collect(@Nonnull final String reference, @Nonnull final Set<String> missing, @Nonnull final Set<String> referenced) {
+    for (final String path : resolve(reference)) {
+      if (paths.contains(path)) {
+        referenced.add(path);
+      } else {
+        missing.add(path);
+      }
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Streaming handler collecting the <code>file</code> of every icon referenced by a library XML.
+ */
+class IconReferenceHandler extends DefaultHandler {
+
+  private static final Set<String> ICON_ELEMENTS = new HashSet<>(Arrays.asList("icon", "line-point-icon", "line-start-icon",
+      "line-end-icon", "segment-icon", "center-icon", "overlay-icon"));
+
+  private final Set<String> iconFiles = new LinkedHashSet<>();
+
+  private String libraryIcon;
+
+  /**
+   * @return the icons of the points, lines, areas, perimeter and surface renderings and extension options, in document order.
+   */
+  Set<String> getIconFiles() {
+    return Collections.unmodifiableSet(iconFiles);
+  }
+
+  String getLibraryIcon() {
+    return libraryIcon;
+  }
+
+  @Override
+  public void startElement(final String uri, final String localName, final String qName, final Attributes attributes)
+      throws SAXException {
+    final String name = localName.isEmpty() ? qName : localName;
+    if ("library-icon".equals(name)) {
+      libraryIcon = attributes.getValue("file");
+    } else if (ICON_ELEMENTS.contains(name)) {
+      final String file = attributes.getValue("file");
+      if (file != null) {
+        iconFiles.add(file);
+      }
+    }
+  }
+}
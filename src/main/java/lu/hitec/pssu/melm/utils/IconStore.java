@@ -0,0 +1,319 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content-addressed store of the icons of all the libraries of a base directory, kept in <code>&lt;base&gt;/.icons</code> as
+ * <code>ab/abcdef....png</code> blobs named after the SHA-1 of their content.
+ * <p>
+ * Deduplicating a library version replaces each of its PNG files by a hard link to the blob of the same content, so that the files of
+ * the unzipped folder keep their paths and every distinct icon is stored once across libraries and versions. When the file system
+ * refuses hard links the file is kept as is. Either way the hash of every icon is written to the {@link #MANIFEST} of the version
+ * directory, from which missing icons can be restored.
+ * <p>
+ * Blobs are made read-only, and so are the icons linked to them, so that rewriting the icon of one version in place cannot change the
+ * others. A blob is hashed again before an icon is linked to it or restored from it, and dropped when it no longer matches its name.
+ */
+public final class IconStore {
+
+  public static final String MANIFEST = "icons.manifest";
+
+  static final String STORE_FOLDER = ".icons";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(IconStore.class);
+
+  private final String baseDirectory;
+
+  private final File storeFolder;
+
+  public IconStore(@Nonnull final String baseDirectory) {
+    assert baseDirectory != null : "Base directory is null";
+    this.baseDirectory = baseDirectory;
+    storeFolder = new File(baseDirectory, STORE_FOLDER);
+  }
+
+  /**
+   * @return true when the blob still holds the content its name says, the blob being deleted otherwise.
+   */
+  private static boolean isIntact(@Nonnull final Path blob, @Nonnull final String hash) throws IOException {
+    if (hash.equals(ContentHash.hash(blob.toFile()))) {
+      return true;
+    }
+    LOGGER.warn(String.format("Dropping blob %s, its content no longer matches its hash", blob));
+    Files.delete(blob);
+    return false;
+  }
+
+  /**
+   * Makes a blob, and every icon linked to it, read-only.
+   */
+  private static void seal(@Nonnull final Path blob) {
+    if (!blob.toFile().setReadOnly() && LOGGER.isDebugEnabled()) {
+      LOGGER.debug(String.format("Blob %s cannot be made read-only", blob));
+    }
+  }
+
+  private static void replace(@Nonnull final Path source, @Nonnull final Path target) throws IOException {
+    final Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+    Files.deleteIfExists(tmp);
+    Files.createLink(tmp, source);
+    try {
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (final IOException e) {
+      Files.deleteIfExists(tmp);
+      throw e;
+    }
+  }
+
+  /**
+   * Stores the icons of a library version, linking its PNG files to the blobs of the store.
+   */
+  public synchronized Report deduplicate(@Nonnull final String libraryName, @Nonnull final String version)
+      throws LibraryValidatorException {
+    assert libraryName != null : "Library name is null";
+    assert version != null : "Version is null";
+    final File unzippedFolder = LibraryValidator.getUnzippedDirectoryForLibraryVersion(baseDirectory, libraryName, version);
+    if (!unzippedFolder.isDirectory()) {
+      throw new LibraryValidatorException(String.format("Unzipped folder %s does not exist", unzippedFolder.getAbsolutePath()));
+    }
+
+    final Report report = new Report();
+    final Path root = unzippedFolder.toPath();
+    try {
+      Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+          if (attrs.isRegularFile() && file.getFileName().toString().endsWith(IconIndex.PNG)) {
+            final String hash = ContentHash.hash(file.toFile());
+            report.hashes.put(IconIndex.normalize(root.relativize(file).toString()), hash);
+            store(file, hash, attrs.size(), report);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+      writeManifest(getManifestFile(libraryName, version), report.hashes);
+    } catch (final IOException e) {
+      throw new LibraryValidatorException(String.format("Error in storing icons of %s-%s: %s", libraryName, version, e.getMessage()), e);
+    }
+
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(String.format("Stored icons of %s-%s: %s", libraryName, version, report));
+    }
+    return report;
+  }
+
+  /**
+   * @return the blob of the given content hash, which may not exist.
+   */
+  public File getBlob(@Nonnull final String hash) {
+    assert hash != null : "Hash is null";
+    return new File(new File(storeFolder, hash.substring(0, 2)), hash + IconIndex.PNG);
+  }
+
+  /**
+   * @return the icon hashes recorded for a library version by path relative to its unzipped folder, empty when it was never
+   *         deduplicated.
+   */
+  public Map<String, String> readManifest(@Nonnull final String libraryName, @Nonnull final String version)
+      throws LibraryValidatorException {
+    assert libraryName != null : "Library name is null";
+    assert version != null : "Version is null";
+    final File manifest = getManifestFile(libraryName, version);
+    final Map<String, String> hashes = new TreeMap<>();
+    if (!manifest.isFile()) {
+      return hashes;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final int tab = line.indexOf('\t');
+        if (tab > 0) {
+          hashes.put(line.substring(tab + 1), line.substring(0, tab));
+        }
+      }
+    } catch (final IOException e) {
+      throw new LibraryValidatorException(String.format("Error in reading %s: %s", manifest.getAbsolutePath(), e.getMessage()), e);
+    }
+    return hashes;
+  }
+
+  /**
+   * Recreates the icons listed in the manifest of a library version that are missing from its unzipped folder, as when only the new
+   * icons of a version were shipped.
+   *
+   * @return the number of restored icons.
+   */
+  public synchronized int restore(@Nonnull final String libraryName, @Nonnull final String version) throws LibraryValidatorException {
+    assert libraryName != null : "Library name is null";
+    assert version != null : "Version is null";
+    final File unzippedFolder = LibraryValidator.getUnzippedDirectoryForLibraryVersion(baseDirectory, libraryName, version);
+    int restored = 0;
+    for (final Map.Entry<String, String> entry : readManifest(libraryName, version).entrySet()) {
+      final File target = new File(unzippedFolder, entry.getKey());
+      if (target.isFile()) {
+        continue;
+      }
+      final File blob = getBlob(entry.getValue());
+      if (!blob.isFile()) {
+        throw new LibraryValidatorException(String.format("Icon %s of %s-%s is not in the store", entry.getKey(), libraryName, version));
+      }
+      try {
+        if (!isIntact(blob.toPath(), entry.getValue())) {
+          throw new LibraryValidatorException(String.format("Icon %s of %s-%s is corrupted in the store", entry.getKey(), libraryName,
+              version));
+        }
+        final File parent = target.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+          throw new IOException(String.format("Failed to create %s", parent.getAbsolutePath()));
+        }
+        try {
+          Files.createLink(target.toPath(), blob.toPath());
+        } catch (final UnsupportedOperationException | IOException e) {
+          Files.copy(blob.toPath(), target.toPath());
+        }
+      } catch (final IOException e) {
+        throw new LibraryValidatorException(String.format("Error in restoring %s: %s", target.getAbsolutePath(), e.getMessage()), e);
+      }
+      restored++;
+    }
+    return restored;
+  }
+
+  private File getManifestFile(@Nonnull final String libraryName, @Nonnull final String version) {
+    return new File(LibraryValidator.buildDirectoryForLibraryVersion(baseDirectory, libraryName, version), MANIFEST);
+  }
+
+  private void store(@Nonnull final Path file, @Nonnull final String hash, final long size, @Nonnull final Report report)
+      throws IOException {
+    final Path blob = getBlob(hash).toPath();
+    // a blob that no longer matches its hash is dropped and stored again from the icon
+    if (!Files.exists(blob) || !Files.isSameFile(blob, file) && !isIntact(blob, hash)) {
+      Files.createDirectories(blob.getParent());
+      try {
+        Files.createLink(blob, file);
+        seal(blob);
+        report.stored++;
+        return;
+      } catch (final FileAlreadyExistsException e) {
+        // stored concurrently by another process, linked below
+      } catch (final UnsupportedOperationException | IOException e) {
+        final Path tmp = blob.resolveSibling(blob.getFileName() + ".tmp");
+        Files.copy(file, tmp, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tmp, blob, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        seal(blob);
+        report.stored++;
+        report.kept++;
+        return;
+      }
+    }
+
+    if (Files.isSameFile(blob, file)) {
+      seal(blob);
+      report.linked++;
+      return;
+    }
+    try {
+      replace(blob, file);
+      report.linked++;
+      report.savedBytes += size;
+    } catch (final UnsupportedOperationException | IOException e) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(String.format("Keeping %s, it cannot be linked to %s: %s", file, blob, e.getMessage()));
+      }
+      report.kept++;
+    }
+  }
+
+  private void writeManifest(@Nonnull final File manifest, @Nonnull final Map<String, String> hashes) throws IOException {
+    final Path tmp = manifest.toPath().resolveSibling(MANIFEST + ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+      for (final Map.Entry<String, String> entry : hashes.entrySet()) {
+        writer.write(entry.getValue());
+        writer.write('\t');
+        writer.write(entry.getKey());
+        writer.newLine();
+      }
+    }
+    Files.move(tmp, manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Outcome of the deduplication of a library version.
+   */
+  public static final class Report {
+
+    private final Map<String, String> hashes = new TreeMap<>();
+
+    private int kept;
+
+    private int linked;
+
+    private long savedBytes;
+
+    private int stored;
+
+    private Report() {
+    }
+
+    /**
+     * @return the content hash of every icon by path relative to the unzipped folder.
+     */
+    public Map<String, String> getHashes() {
+      return Collections.unmodifiableMap(hashes);
+    }
+
+    /**
+     * @return the number of icons kept as separate copies because the file system refused a hard link.
+     */
+    public int getKept() {
+      return kept;
+    }
+
+    /**
+     * @return the number of icons linked to a blob already in the store.
+     */
+    public int getLinked() {
+      return linked;
+    }
+
+    /**
+     * @return the disk space freed by linking icons to existing blobs.
+     */
+    public long getSavedBytes() {
+      return savedBytes;
+    }
+
+    /**
+     * @return the number of icons whose content was new to the store.
+     */
+    public int getStored() {
+      return stored;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d icons, %d new, %d linked, %d kept, %d bytes saved", hashes.size(), stored, linked, kept, savedBytes);
+    }
+  }
+}
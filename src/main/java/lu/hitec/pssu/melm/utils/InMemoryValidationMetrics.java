@@ -0,0 +1,223 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnull;
+
+/**
+ * {@link ValidationMetrics} kept in memory with atomic counters, to be read by a monitoring endpoint. Phase durations go to a histogram
+ * of power-of-two microsecond buckets, so percentiles are approximated by the upper bound of their bucket.
+ */
+public final class InMemoryValidationMetrics implements ValidationMetrics {
+
+  /**
+   * Bucket 0 counts durations below 1 µs, bucket <code>i</code> those in [2<sup>i-1</sup>, 2<sup>i</sup>) µs, the last one everything
+   * above.
+   */
+  static final int BUCKETS = 40;
+
+  private final AtomicLong bytesRead = new AtomicLong();
+
+  private final Map<ValidationFailure, AtomicLong> failures;
+
+  private final AtomicLong nodes = new AtomicLong();
+
+  private final Map<ValidationPhase, PhaseTimer> timers;
+
+  public InMemoryValidationMetrics() {
+    final Map<ValidationFailure, AtomicLong> failureCounters = new EnumMap<>(ValidationFailure.class);
+    for (final ValidationFailure failure : ValidationFailure.values()) {
+      failureCounters.put(failure, new AtomicLong());
+    }
+    failures = Collections.unmodifiableMap(failureCounters);
+    final Map<ValidationPhase, PhaseTimer> phaseTimers = new EnumMap<>(ValidationPhase.class);
+    for (final ValidationPhase phase : ValidationPhase.values()) {
+      phaseTimers.put(phase, new PhaseTimer());
+    }
+    timers = Collections.unmodifiableMap(phaseTimers);
+  }
+
+  static int bucket(final long durationNanos) {
+    final long micros = durationNanos / 1000L;
+    if (micros <= 0) {
+      return 0;
+    }
+    return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+  }
+
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  public long getFailureCount(@Nonnull final ValidationFailure failure) {
+    assert failure != null : "Failure is null";
+    return failures.get(failure).get();
+  }
+
+  public long getNodeCount() {
+    return nodes.get();
+  }
+
+  public PhaseStatistics getPhaseStatistics(@Nonnull final ValidationPhase phase) {
+    assert phase != null : "Phase is null";
+    return timers.get(phase).snapshot();
+  }
+
+  @Override
+  public void recordBytesRead(final long bytes) {
+    bytesRead.addAndGet(bytes);
+  }
+
+  @Override
+  public void recordFailure(@Nonnull final ValidationFailure failure) {
+    failures.get(failure).incrementAndGet();
+  }
+
+  @Override
+  public void recordNodes(final int count) {
+    nodes.addAndGet(count);
+  }
+
+  @Override
+  public void recordPhase(@Nonnull final ValidationPhase phase, final long durationNanos) {
+    timers.get(phase).record(durationNanos);
+  }
+
+  /**
+   * Resets every counter. Measurements recorded concurrently may be partially kept.
+   */
+  public void reset() {
+    bytesRead.set(0);
+    nodes.set(0);
+    for (final AtomicLong counter : failures.values()) {
+      counter.set(0);
+    }
+    for (final PhaseTimer timer : timers.values()) {
+      timer.reset();
+    }
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    for (final ValidationPhase phase : ValidationPhase.values()) {
+      final PhaseStatistics statistics = getPhaseStatistics(phase);
+      sb.append(String.format("%s count=%d mean=%dns p99<=%dns max=%dns%n", phase, statistics.getCount(), statistics.getMeanNanos(),
+          statistics.getPercentileNanos(0.99), statistics.getMaxNanos()));
+    }
+    for (final ValidationFailure failure : ValidationFailure.values()) {
+      sb.append(String.format("%s failures=%d%n", failure, getFailureCount(failure)));
+    }
+    sb.append(String.format("bytesRead=%d nodes=%d", getBytesRead(), getNodeCount()));
+    return sb.toString();
+  }
+
+  /**
+   * Immutable view of the measurements of one phase.
+   */
+  public static final class PhaseStatistics {
+
+    private final long count;
+
+    private final long[] histogram;
+
+    private final long maxNanos;
+
+    private final long totalNanos;
+
+    PhaseStatistics(final long count, final long totalNanos, final long maxNanos, @Nonnull final long[] histogram) {
+      this.count = count;
+      this.totalNanos = totalNanos;
+      this.maxNanos = maxNanos;
+      this.histogram = histogram;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * @return the number of durations in each power-of-two microsecond bucket.
+     */
+    public long[] getHistogram() {
+      return histogram.clone();
+    }
+
+    public long getMaxNanos() {
+      return maxNanos;
+    }
+
+    public long getMeanNanos() {
+      return count == 0 ? 0 : totalNanos / count;
+    }
+
+    /**
+     * @return the upper bound of the bucket holding the given quantile, capped by the maximum duration; 0 without measurement.
+     */
+    public long getPercentileNanos(final double quantile) {
+      assert quantile >= 0 && quantile <= 1 : "Quantile is not in [0, 1]";
+      long total = 0;
+      for (final long bucketCount : histogram) {
+        total += bucketCount;
+      }
+      if (total == 0) {
+        return 0;
+      }
+      final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+      long seen = 0;
+      for (int i = 0; i < histogram.length; i++) {
+        seen += histogram[i];
+        if (seen >= rank) {
+          return Math.min(maxNanos, (1L << i) * 1000L);
+        }
+      }
+      return maxNanos;
+    }
+
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+  }
+
+  private static final class PhaseTimer {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    private final AtomicLong total = new AtomicLong();
+
+    void record(final long durationNanos) {
+      count.incrementAndGet();
+      total.addAndGet(durationNanos);
+      buckets.incrementAndGet(bucket(durationNanos));
+      long current = max.get();
+      while (durationNanos > current && !max.compareAndSet(current, durationNanos)) {
+        current = max.get();
+      }
+    }
+
+    void reset() {
+      count.set(0);
+      total.set(0);
+      max.set(0);
+      for (int i = 0; i < BUCKETS; i++) {
+        buckets.set(i, 0);
+      }
+    }
+
+    PhaseStatistics snapshot() {
+      final long[] histogram = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+        histogram[i] = buckets.get(i);
+      }
+      return new PhaseStatistics(count.get(), total.get(), max.get(), histogram);
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Streaming handler checking the rules of a library hierarchy that the schema does not express:
+ * <ul>
+ * <li>the hierarchy-code of a node extends the one of its parent node by exactly one segment,</li>
+ * <li>choice-values are unique within their choice,</li>
+ * <li>unique-codes and extension ids are unique within the library (the identity constraint of the schema does not match any node),</li>
+ * <li>every extension referenced by an element is declared.</li>
+ * </ul>
+ * Each node is checked once with hash set lookups, extension references being resolved at the end of the document since extensions
+ * are declared after the hierarchy. All violations are collected instead of stopping at the first one.
+ */
+class IntegrityHandler extends DefaultHandler {
+
+  private final Deque<Set<String>> choiceValues = new ArrayDeque<>();
+
+  private final Set<String> declaredExtensions = new HashSet<>();
+
+  private final List<String[]> extensionRefs = new ArrayList<>();
+
+  private boolean inElement;
+
+  /** Hierarchy-codes of the open nodes, an empty string standing for a node without code. */
+  private final Deque<String> nodeCodes = new ArrayDeque<>();
+
+  private final Deque<String> nodeUniqueCodes = new ArrayDeque<>();
+
+  private final Set<String> uniqueCodes = new HashSet<>();
+
+  private final List<String> violations = new ArrayList<>();
+
+  @Override
+  public void endDocument() throws SAXException {
+    for (final String[] extensionRef : extensionRefs) {
+      if (!declaredExtensions.contains(extensionRef[1])) {
+        violations.add(String.format("Node %s references the undeclared extension %s", extensionRef[0], extensionRef[1]));
+      }
+    }
+    extensionRefs.clear();
+  }
+
+  @Override
+  public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+    final String name = localName.isEmpty() ? qName : localName;
+    switch (name) {
+    case "choice":
+      choiceValues.pop();
+      break;
+    case "node":
+      nodeCodes.pop();
+      nodeUniqueCodes.pop();
+      break;
+    case "element":
+      inElement = false;
+      break;
+    default:
+      break;
+    }
+  }
+
+  /**
+   * @return the violations found, in document order except for undeclared extensions which come last.
+   */
+  List<String> getViolations() {
+    return Collections.unmodifiableList(violations);
+  }
+
+  @Override
+  public void startElement(final String uri, final String localName, final String qName, final Attributes attributes)
+      throws SAXException {
+    final String name = localName.isEmpty() ? qName : localName;
+    switch (name) {
+    case "choice":
+      choiceValues.push(new HashSet<String>());
+      break;
+    case "node":
+      startNode(attributes);
+      break;
+    case "element":
+      inElement = true;
+      break;
+    case "extension":
+      final String id = inElement ? attributes.getValue("ref") : attributes.getValue("id");
+      if (id == null) {
+        break;
+      }
+      if (inElement) {
+        extensionRefs.add(new String[] { nodeUniqueCodes.isEmpty() ? "" : nodeUniqueCodes.peek(), id });
+      } else if (!declaredExtensions.add(id)) {
+        violations.add(String.format("Extension %s is declared more than once", id));
+      }
+      break;
+    default:
+      break;
+    }
+  }
+
+  private void startNode(@Nonnull final Attributes attributes) {
+    final String uniqueCode = String.valueOf(attributes.getValue("unique-code"));
+    if (!uniqueCodes.add(uniqueCode)) {
+      violations.add(String.format("Node %s: unique-code already used", uniqueCode));
+    }
+
+    final String choiceValue = attributes.getValue("choice-value");
+    if (choiceValue != null && !choiceValues.isEmpty() && !choiceValues.peek().add(choiceValue)) {
+      violations.add(String.format("Node %s: choice-value \"%s\" already used in the same choice", uniqueCode, choiceValue));
+    }
+
+    final String code = attributes.getValue("hierarchy-code");
+    final String parentCode = nodeCodes.isEmpty() ? "" : nodeCodes.peek();
+    if (code != null && !parentCode.isEmpty()) {
+      final String prefix = parentCode + ".";
+      if (!code.startsWith(prefix) || code.length() == prefix.length() || code.indexOf('.', prefix.length()) >= 0) {
+        violations.add(String.format("Node %s: hierarchy-code %s does not extend %s of its parent %s by one level", uniqueCode, code,
+            parentCode, nodeUniqueCodes.peek()));
+      }
+    }
+    nodeCodes.push(code == null ? "" : code);
+    nodeUniqueCodes.push(uniqueCode);
+  }
+}
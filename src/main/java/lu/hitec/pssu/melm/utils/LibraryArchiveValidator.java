@@ -0,0 +1,266 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import javax.annotation.Nonnull;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+
+/**
+ * Validates library ZIP archives without extracting them: the single XML entry is streamed through the validation pass and the icons
+ * it references are looked up in the entries of the archive. Extraction to the base directory only happens once the archive is valid,
+ * into a staging folder that replaces the unzipped folder of the library version once complete. Failures are counted in the
+ * {@link LibraryValidator#getMetrics() metrics} of the validator.
+ */
+public final class LibraryArchiveValidator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LibraryArchiveValidator.class);
+
+  private LibraryArchiveValidator() {
+  }
+
+  /**
+   * Validates the archive, then extracts the folder holding its XML into the unzipped directory of the library version, replacing the
+   * files of an earlier extraction.
+   *
+   * @return the extracted library XML.
+   */
+  public static File extractArchive(@Nonnull final String xsdPath, @Nonnull final File zipFile, @Nonnull final String baseDirectory,
+      @Nonnull final String libraryName, @Nonnull final String version) throws LibraryValidatorException {
+    return extractArchive(xsdPath, zipFile, baseDirectory, libraryName, version, null);
+  }
+
+  /**
+   * Validates and extracts the archive, then links its icons to the given store so that only the icons new to the store take disk
+   * space.
+   *
+   * @return the extracted library XML.
+   */
+  public static File extractArchive(@Nonnull final String xsdPath, @Nonnull final File zipFile, @Nonnull final String baseDirectory,
+      @Nonnull final String libraryName, @Nonnull final String version, final IconStore iconStore) throws LibraryValidatorException {
+    assert xsdPath != null : "XSD path is null";
+    assert zipFile != null : "Zip file is null";
+    assert baseDirectory != null : "Base directory is null";
+    assert libraryName != null : "Library name is null";
+    assert version != null : "Version is null";
+
+    try (ZipFile zip = new ZipFile(zipFile)) {
+      final String xmlEntryName = validateZipFile(SchemaRegistry.getSchema(xsdPath), zip, libraryName, version).xmlEntryName;
+      final String prefix = getFolder(xmlEntryName);
+      final File unzippedFolder = LibraryValidator.resolveUnzippedDirectoryForLibraryVersion(baseDirectory, libraryName, version);
+      // the archive is extracted next to the unzipped folder, which is only replaced once the extraction is complete
+      final File createdFolder = LibraryFolders.firstMissingFolder(unzippedFolder.getParentFile());
+      final File staging = new File(unzippedFolder.getPath() + ".tmp");
+      boolean extracted = false;
+      try {
+        LibraryFolders.delete(staging);
+        if (!staging.mkdirs()) {
+          throw new IOException(String.format("Failed to create %s", staging.getAbsolutePath()));
+        }
+        final String root = staging.getCanonicalPath() + File.separator;
+        for (final Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+          final ZipEntry entry = entries.nextElement();
+          if (entry.isDirectory() || !entry.getName().startsWith(prefix)) {
+            continue;
+          }
+          final File target = new File(staging, entry.getName().substring(prefix.length()));
+          if (!target.getCanonicalPath().startsWith(root)) {
+            throw new LibraryValidatorException(String.format("Entry %s is outside of the library folder", entry.getName()));
+          }
+          final File parent = target.getParentFile();
+          if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException(String.format("Failed to create %s", parent.getAbsolutePath()));
+          }
+          try (InputStream in = zip.getInputStream(entry)) {
+            Files.copy(in, target.toPath());
+          }
+        }
+        LibraryFolders.replace(staging, unzippedFolder);
+        extracted = true;
+      } finally {
+        if (!extracted) {
+          LibraryFolders.discard(createdFolder == null ? staging : createdFolder);
+        }
+      }
+
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(String.format("Extracted %s to %s", zipFile.getAbsolutePath(), unzippedFolder.getAbsolutePath()));
+      }
+      if (iconStore != null) {
+        iconStore.deduplicate(libraryName, version);
+      }
+      return new File(unzippedFolder, xmlEntryName.substring(prefix.length()));
+    } catch (final IOException e) {
+      LibraryValidator.getMetrics().recordFailure(ValidationFailure.IO_ERROR);
+      throw new LibraryValidatorException(String.format("Error in extracting archive %s: %s", zipFile.getName(), e.getMessage()), e);
+    }
+  }
+
+  public static LibraryDescription validateArchive(@Nonnull final String xsdPath, @Nonnull final File zipFile,
+      @Nonnull final String libraryName, @Nonnull final String version) throws LibraryValidatorException {
+    assert xsdPath != null : "XSD path is null";
+    assert zipFile != null : "Zip file is null";
+    assert libraryName != null : "Library name is null";
+    assert version != null : "Version is null";
+
+    try (ZipFile zip = new ZipFile(zipFile)) {
+      return validateZipFile(SchemaRegistry.getSchema(xsdPath), zip, libraryName, version).description;
+    } catch (final IOException e) {
+      LibraryValidator.getMetrics().recordFailure(ValidationFailure.IO_ERROR);
+      throw new LibraryValidatorException(String.format("Error in reading archive %s: %s", zipFile.getName(), e.getMessage()), e);
+    }
+  }
+
+  /**
+   * Validates an archive read sequentially from a stream. The stream is consumed but not closed.
+   */
+  public static LibraryDescription validateArchive(@Nonnull final String xsdPath, @Nonnull final InputStream zipStream,
+      @Nonnull final String libraryName, @Nonnull final String version) throws LibraryValidatorException {
+    assert xsdPath != null : "XSD path is null";
+    assert zipStream != null : "Zip stream is null";
+    assert libraryName != null : "Library name is null";
+    assert version != null : "Version is null";
+
+    final CompiledSchema schema = SchemaRegistry.getSchema(xsdPath);
+    final ZipInputStream zin = new ZipInputStream(zipStream);
+    final List<String> entryNames = new ArrayList<>();
+    final ArchiveHandler handler = new ArchiveHandler();
+    int xmlCount = 0;
+    try {
+      ZipEntry entry;
+      while ((entry = zin.getNextEntry()) != null) {
+        if (entry.isDirectory()) {
+          continue;
+        }
+        entryNames.add(entry.getName());
+        if (isXml(entry.getName()) && xmlCount++ == 0) {
+          handler.xmlEntryName = entry.getName();
+          validateXmlEntry(new NonClosingInputStream(zin), schema, libraryName, version, handler);
+        }
+      }
+    } catch (final IOException e) {
+      LibraryValidator.getMetrics().recordFailure(ValidationFailure.IO_ERROR);
+      throw new LibraryValidatorException(String.format("Error in reading archive: %s", e.getMessage()), e);
+    }
+
+    checkXmlCount(xmlCount);
+    checkIcons(handler, entryNames);
+    return handler.description;
+  }
+
+  private static void checkIcons(@Nonnull final ArchiveHandler handler, @Nonnull final List<String> entryNames)
+      throws LibraryValidatorException {
+    final String prefix = getFolder(handler.xmlEntryName);
+    final List<String> relativePaths = new ArrayList<>(entryNames.size());
+    for (final String entryName : entryNames) {
+      if (entryName.startsWith(prefix)) {
+        relativePaths.add(entryName.substring(prefix.length()));
+      }
+    }
+    final IconCheckReport report = new IconIndex(relativePaths).check(handler.icons.getLibraryIcon(), handler.icons.getIconFiles());
+    if (!report.isComplete()) {
+      final String msg = String.format("Icons referenced in xml are missing from the archive: %s", report.getMissing());
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(msg);
+      }
+      LibraryValidator.getMetrics().recordFailure(ValidationFailure.MISSING_ICONS);
+      throw new LibraryValidatorException(msg);
+    }
+    if (LOGGER.isDebugEnabled() && !report.getOrphaned().isEmpty()) {
+      LOGGER.debug(String.format("Files not referenced in xml : %s", report.getOrphaned()));
+    }
+  }
+
+  private static void checkXmlCount(final int xmlCount) throws LibraryValidatorException {
+    if (xmlCount != 1) {
+      final String msg = String.format("There are %d xml files in the archive, one and only one is allowed", xmlCount);
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(msg);
+      }
+      LibraryValidator.getMetrics().recordFailure(ValidationFailure.LIBRARY_NOT_FOUND);
+      throw new LibraryValidatorException(msg);
+    }
+  }
+
+  private static String getFolder(@Nonnull final String entryName) {
+    return entryName.substring(0, entryName.lastIndexOf('/') + 1);
+  }
+
+  private static boolean isXml(@Nonnull final String entryName) {
+    return entryName.endsWith(".xml");
+  }
+
+  private static ArchiveHandler validateZipFile(@Nonnull final CompiledSchema schema, @Nonnull final ZipFile zip,
+      @Nonnull final String libraryName, @Nonnull final String version) throws LibraryValidatorException, IOException {
+    // the central directory is read upfront, no entry is inflated but the xml one
+    final ArchiveHandler handler = new ArchiveHandler();
+    final List<String> entryNames = new ArrayList<>(zip.size());
+    int xmlCount = 0;
+    for (final Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+      final ZipEntry entry = entries.nextElement();
+      if (!entry.isDirectory()) {
+        entryNames.add(entry.getName());
+        if (isXml(entry.getName()) && xmlCount++ == 0) {
+          handler.xmlEntryName = entry.getName();
+        }
+      }
+    }
+    checkXmlCount(xmlCount);
+
+    try (InputStream in = zip.getInputStream(zip.getEntry(handler.xmlEntryName))) {
+      validateXmlEntry(in, schema, libraryName, version, handler);
+    }
+    checkIcons(handler, entryNames);
+    return handler;
+  }
+
+  private static void validateXmlEntry(@Nonnull final InputStream in, @Nonnull final CompiledSchema schema,
+      @Nonnull final String libraryName, @Nonnull final String version, @Nonnull final ArchiveHandler handler)
+      throws LibraryValidatorException {
+    final InputSource source = new InputSource(in);
+    source.setSystemId(handler.xmlEntryName);
+    try {
+      handler.description = LibraryValidator.validateInSinglePass(source, schema, libraryName, version, handler.icons);
+    } catch (final DescriptionHandler.DescriptionMismatchException e) {
+      LibraryValidator.getMetrics().recordFailure(e.getFailure());
+      throw new LibraryValidatorException(e.getMessage(), e);
+    }
+  }
+
+  private static final class ArchiveHandler {
+
+    private LibraryDescription description;
+
+    private final IconReferenceHandler icons = new IconReferenceHandler();
+
+    private String xmlEntryName;
+  }
+
+  /**
+   * Keeps the parser from closing the whole archive when it is done with the XML entry.
+   */
+  private static final class NonClosingInputStream extends FilterInputStream {
+
+    private NonClosingInputStream(@Nonnull final InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
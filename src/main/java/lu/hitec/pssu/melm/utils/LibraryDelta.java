@@ -0,0 +1,281 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import javax.annotation.Nonnull;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delta packages turning a validated library version into the next one. A package is a ZIP archive holding a {@link #MANIFEST} entry,
+ * which names both versions, fingerprints the files of the old one and lists the files to delete, then the added and changed files of
+ * the new version below {@link #FILES}. Unchanged files are left out, the XML included: it is only shipped, whole, when it changed.
+ * Folders emptied by the deleted files are deleted as well.
+ * <p>
+ * Applying a package builds the new unzipped folder in a staging folder and validates it there: it only becomes visible once valid,
+ * and nothing is left behind otherwise.
+ */
+public final class LibraryDelta {
+
+  static final String FILES = "files/";
+
+  static final String MANIFEST = "delta.manifest";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LibraryDelta.class);
+
+  private LibraryDelta() {
+  }
+
+  /**
+   * Applies a delta package to the old version of a library in the base directory, creating the new version.
+   *
+   * @return the validated XML of the new version.
+   */
+  public static File applyDelta(@Nonnull final String xsdPath, @Nonnull final String baseDirectory, @Nonnull final File deltaFile)
+      throws LibraryValidatorException {
+    assert xsdPath != null : "XSD path is null";
+    assert baseDirectory != null : "Base directory is null";
+    assert deltaFile != null : "Delta file is null";
+
+    try (ZipFile zip = new ZipFile(deltaFile)) {
+      final ZipEntry manifestEntry = zip.getEntry(MANIFEST);
+      if (manifestEntry == null) {
+        throw new LibraryValidatorException(String.format("%s is not a delta package", deltaFile.getName()));
+      }
+      String libraryName = null;
+      String fromVersion = null;
+      String toVersion = null;
+      String fingerprint = null;
+      final List<String> removed = new ArrayList<>();
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(zip.getInputStream(manifestEntry),
+          StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          final int tab = line.indexOf('\t');
+          final String key = tab < 0 ? line : line.substring(0, tab);
+          final String value = tab < 0 ? "" : line.substring(tab + 1);
+          switch (key) {
+          case "library":
+            libraryName = value;
+            break;
+          case "from":
+            fromVersion = value;
+            break;
+          case "to":
+            toVersion = value;
+            break;
+          case "fingerprint":
+            fingerprint = value;
+            break;
+          case "remove":
+            removed.add(value);
+            break;
+          default:
+            break;
+          }
+        }
+      }
+      if (libraryName == null || fromVersion == null || toVersion == null || fingerprint == null) {
+        throw new LibraryValidatorException(String.format("Manifest of %s is incomplete", deltaFile.getName()));
+      }
+      for (final String name : new String[] { libraryName, fromVersion, toVersion }) {
+        if (!isPlainName(name)) {
+          throw new LibraryValidatorException(String.format("Manifest of %s names %s, which is not a plain folder name",
+              deltaFile.getName(), name));
+        }
+      }
+
+      final File fromFolder = LibraryValidator.resolveUnzippedDirectoryForLibraryVersion(baseDirectory, libraryName, fromVersion);
+      final File toFolder = LibraryValidator.resolveUnzippedDirectoryForLibraryVersion(baseDirectory, libraryName, toVersion);
+      final File staging = new File(toFolder.getPath() + ".tmp");
+      final File base = new File(baseDirectory);
+      checkInside(base, fromFolder);
+      checkInside(base, toFolder);
+      checkInside(base, staging);
+      if (!fromFolder.isDirectory()) {
+        throw new LibraryValidatorException(String.format("Library %s-%s the delta applies to does not exist", libraryName,
+            fromVersion));
+      }
+      if (!fingerprint.equals(fingerprint(LibraryDiff.hashFiles(fromFolder)))) {
+        throw new LibraryValidatorException(String.format("Library %s-%s differs from the one the delta was built from", libraryName,
+            fromVersion));
+      }
+      if (toFolder.exists()) {
+        throw new LibraryValidatorException(String.format("Library %s-%s already exists", libraryName, toVersion));
+      }
+
+      // the staging folder sits in the version directory so that the final move stays on the same file system
+      final File createdFolder = LibraryFolders.firstMissingFolder(toFolder.getParentFile());
+      boolean applied = false;
+      try {
+        LibraryFolders.delete(staging);
+        LibraryFolders.copy(fromFolder.toPath(), staging.toPath());
+        for (final String path : removed) {
+          final File file = resolve(staging, path);
+          Files.deleteIfExists(file.toPath());
+          prune(staging, file.getParentFile());
+        }
+        for (final ZipEntry entry : Collections.list(zip.entries())) {
+          if (entry.isDirectory() || !entry.getName().startsWith(FILES)) {
+            continue;
+          }
+          final File target = resolve(staging, entry.getName().substring(FILES.length()));
+          final File parent = target.getParentFile();
+          if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException(String.format("Failed to create %s", parent.getAbsolutePath()));
+          }
+          try (InputStream in = zip.getInputStream(entry)) {
+            Files.copy(in, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+          }
+        }
+
+        final File stagedXml = LibraryValidator.validateLibrary(xsdPath, findXml(staging), libraryName, toVersion);
+        Files.move(staging.toPath(), toFolder.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        applied = true;
+        if (LOGGER.isDebugEnabled()) {
+          LOGGER.debug(String.format("Applied %s to %s-%s, creating %s", deltaFile.getAbsolutePath(), libraryName, fromVersion,
+              toVersion));
+        }
+        return new File(toFolder, stagedXml.getName());
+      } finally {
+        if (!applied) {
+          LibraryFolders.discard(createdFolder == null ? staging : createdFolder);
+        }
+      }
+    } catch (final IOException e) {
+      throw new LibraryValidatorException(String.format("Error in applying delta %s: %s", deltaFile.getName(), e.getMessage()), e);
+    }
+  }
+
+  /**
+   * Validates both versions of a library and writes the delta package turning the first one into the second one.
+   *
+   * @return the differences shipped by the package.
+   */
+  public static LibraryDiff createDelta(@Nonnull final String xsdPath, @Nonnull final String baseDirectory,
+      @Nonnull final String libraryName, @Nonnull final String fromVersion, @Nonnull final String toVersion,
+      @Nonnull final File deltaFile) throws LibraryValidatorException {
+    assert deltaFile != null : "Delta file is null";
+    final LibraryDiff diff = LibraryValidator.diffLibraries(xsdPath, baseDirectory, libraryName, fromVersion, toVersion);
+    final File toFolder = LibraryValidator.getUnzippedDirectoryForLibraryVersion(baseDirectory, libraryName, toVersion);
+    final File tmp = new File(deltaFile.getPath() + ".tmp");
+    try {
+      try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+        zip.putNextEntry(new ZipEntry(MANIFEST));
+        final Writer writer = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+        writer.write(String.format("library\t%s%nfrom\t%s%nto\t%s%nfingerprint\t%s%n", libraryName, fromVersion, toVersion,
+            fingerprint(diff.getFromFiles())));
+        for (final String path : diff.getRemovedFiles()) {
+          writer.write(String.format("remove\t%s%n", path));
+        }
+        writer.flush();
+        zip.closeEntry();
+        write(zip, toFolder, diff.getAddedFiles());
+        write(zip, toFolder, diff.getChangedFiles());
+      }
+      Files.move(tmp.toPath(), deltaFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (final IOException e) {
+      throw new LibraryValidatorException(String.format("Error in writing delta %s: %s", deltaFile.getName(), e.getMessage()), e);
+    }
+
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(String.format("Delta from %s-%s to %s: %s", libraryName, fromVersion, toVersion, diff));
+    }
+    return diff;
+  }
+
+  /**
+   * Deletes a folder left empty by a deleted file, then its parents left empty in turn, up to the given root.
+   */
+  private static void prune(@Nonnull final File root, @Nonnull final File folder) throws IOException {
+    for (File current = folder; current != null && !current.equals(root); current = current.getParentFile()) {
+      final String[] children = current.list();
+      if (children == null || children.length > 0) {
+        return;
+      }
+      Files.delete(current.toPath());
+    }
+  }
+
+  private static void checkInside(@Nonnull final File folder, @Nonnull final File file) throws IOException {
+    if (!file.getCanonicalPath().startsWith(folder.getCanonicalPath() + File.separator)) {
+      throw new IOException(String.format("Folder %s is outside of the base directory", file.getPath()));
+    }
+  }
+
+  private static File findXml(@Nonnull final File folder) throws LibraryValidatorException {
+    final File[] xmlFiles = folder.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(final File dir, final String name) {
+        return name.endsWith(".xml");
+      }
+    });
+    if (xmlFiles == null || xmlFiles.length != 1) {
+      throw new LibraryValidatorException(String.format("There are %d xml files in the folder, one and only one is allowed",
+          xmlFiles == null ? 0 : xmlFiles.length));
+    }
+    return xmlFiles[0];
+  }
+
+  /**
+   * @return a hash of the paths and content hashes of the files of a library folder.
+   */
+  private static String fingerprint(@Nonnull final Map<String, String> files) {
+    final MessageDigest digest = ContentHash.newDigest();
+    for (final Map.Entry<String, String> entry : files.entrySet()) {
+      digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      digest.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) '\n');
+    }
+    return ContentHash.toHex(digest.digest());
+  }
+
+  /**
+   * @return true when the name of a library or version of the manifest cannot lead out of the folder it is resolved in.
+   */
+  private static boolean isPlainName(@Nonnull final String name) {
+    return !name.isEmpty() && !name.contains("..") && name.indexOf('/') < 0 && name.indexOf('\\') < 0
+        && name.indexOf(File.separatorChar) < 0;
+  }
+
+  private static File resolve(@Nonnull final File folder, @Nonnull final String path) throws IOException {
+    final File target = new File(folder, path);
+    if (!target.getCanonicalPath().startsWith(folder.getCanonicalPath() + File.separator)) {
+      throw new IOException(String.format("Entry %s is outside of the library folder", path));
+    }
+    return target;
+  }
+
+  private static void write(@Nonnull final ZipOutputStream zip, @Nonnull final File folder, @Nonnull final Iterable<String> paths)
+      throws IOException {
+    for (final String path : paths) {
+      zip.putNextEntry(new ZipEntry(FILES + path));
+      Files.copy(new File(folder, path).toPath(), zip);
+      zip.closeEntry();
+    }
+  }
+}
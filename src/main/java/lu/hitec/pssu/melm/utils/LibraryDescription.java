@@ -0,0 +1,55 @@
+package lu.hitec.pssu.melm.utils;
+
+/**
+ * Content of the <code>description</code> header of a library XML.
+ */
+public final class LibraryDescription {
+
+  private final String libraryDisplayName;
+
+  private final String libraryIcon;
+
+  private final String libraryName;
+
+  private final String libraryType;
+
+  private final String libraryVersion;
+
+  LibraryDescription(final String libraryType, final String libraryVersion, final String libraryName, final String libraryDisplayName,
+      final String libraryIcon) {
+    this.libraryType = libraryType;
+    this.libraryVersion = libraryVersion;
+    this.libraryName = libraryName;
+    this.libraryDisplayName = libraryDisplayName;
+    this.libraryIcon = libraryIcon;
+  }
+
+  public String getLibraryDisplayName() {
+    return libraryDisplayName;
+  }
+
+  /**
+   * @return the <code>file</code> of the optional <code>library-icon</code>, null if absent.
+   */
+  public String getLibraryIcon() {
+    return libraryIcon;
+  }
+
+  public String getLibraryName() {
+    return libraryName;
+  }
+
+  public String getLibraryType() {
+    return libraryType;
+  }
+
+  public String getLibraryVersion() {
+    return libraryVersion;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("LibraryDescription [type=%s, version=%s, name=%s, displayName=%s, icon=%s]", libraryType, libraryVersion,
+        libraryName, libraryDisplayName, libraryIcon);
+  }
+}
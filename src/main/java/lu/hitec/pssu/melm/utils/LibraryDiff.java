@@ -0,0 +1,272 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Structural differences between two versions of a library: nodes are matched by unique-code and compared field by field, files of
+ * the unzipped folders are matched by path and compared by content hash. Both hierarchies and both folders are read once, with hash
+ * lookups, so the cost is linear in the size of the libraries.
+ */
+public final class LibraryDiff {
+
+  static final String FIELD_CHOICE = "choice";
+
+  static final String FIELD_CUSTOM_PROPERTIES = "custom-properties";
+
+  static final String FIELD_DESCRIPTION = "description";
+
+  static final String FIELD_ELEMENT = "element";
+
+  static final String FIELD_EXTENSION = "extension";
+
+  static final String FIELD_HIERARCHY_CODE = "hierarchy-code";
+
+  static final String FIELD_ICONS = "icons";
+
+  static final String FIELD_PARENT = "parent";
+
+  private static final String[] FIELDS = { FIELD_PARENT, FIELD_HIERARCHY_CODE, FIELD_CHOICE, FIELD_DESCRIPTION, FIELD_ELEMENT,
+      FIELD_EXTENSION, FIELD_ICONS, FIELD_CUSTOM_PROPERTIES };
+
+  private final Set<String> addedFiles = new TreeSet<>();
+
+  private final List<String> addedNodes = new ArrayList<>();
+
+  private final Set<String> changedFiles = new TreeSet<>();
+
+  private final Map<String, String> fromFiles;
+
+  private final Map<String, List<String>> modifiedNodes = new LinkedHashMap<>();
+
+  private final Set<String> removedFiles = new TreeSet<>();
+
+  private final List<String> removedNodes = new ArrayList<>();
+
+  private final Map<String, String> toFiles;
+
+  private LibraryDiff(@Nonnull final Map<String, String> fromFiles, @Nonnull final Map<String, String> toFiles) {
+    this.fromFiles = fromFiles;
+    this.toFiles = toFiles;
+  }
+
+  /**
+   * Compares two hierarchies and the files of their unzipped folders.
+   */
+  static LibraryDiff compare(@Nonnull final FlatLibrary from, @Nonnull final File fromFolder, @Nonnull final FlatLibrary to,
+      @Nonnull final File toFolder) throws IOException {
+    assert from != null : "From library is null";
+    assert fromFolder != null : "From folder is null";
+    assert to != null : "To library is null";
+    assert toFolder != null : "To folder is null";
+    final LibraryDiff diff = new LibraryDiff(hashFiles(fromFolder), hashFiles(toFolder));
+    diff.compareNodes(from, to);
+    diff.compareFiles();
+    return diff;
+  }
+
+  /**
+   * @return the content hash of every file below the folder, by path relative to it.
+   */
+  static Map<String, String> hashFiles(@Nonnull final File folder) throws IOException {
+    final Path root = folder.toPath();
+    final Map<String, String> hashes = new TreeMap<>();
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+        if (attrs.isRegularFile()) {
+          hashes.put(IconIndex.normalize(root.relativize(file).toString()), ContentHash.hash(file.toFile()));
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return hashes;
+  }
+
+  private static Set<String> icons(@Nonnull final Set<String> files) {
+    final Set<String> icons = new TreeSet<>();
+    for (final String file : files) {
+      if (!file.endsWith(".xml")) {
+        icons.add(file);
+      }
+    }
+    return Collections.unmodifiableSet(icons);
+  }
+
+  /**
+   * @return the values of the compared fields of a node, in the order of {@link #FIELDS}.
+   */
+  private static String[] signature(@Nonnull final FlatLibrary library, final int node) {
+    final int parent = library.getParent(node);
+    final StringBuilder icons = new StringBuilder();
+    for (int icon = 0; icon < library.getIconCount(node); icon++) {
+      icons.append(library.getIconRole(node, icon)).append(' ').append(library.getIconFile(node, icon)).append(' ').append(
+          library.getIconAnchor(node, icon)).append('\n');
+    }
+    final StringBuilder properties = new StringBuilder();
+    for (int property = 0; property < library.getCustomPropertyCount(node); property++) {
+      properties.append(library.getCustomPropertyKey(node, property)).append(' ').append(library.getCustomPropertyType(node, property))
+          .append('\n');
+    }
+    return new String[] { parent < 0 ? null : library.getUniqueCode(parent), library.getHierarchyCode(node),
+        library.getChoiceVar(node) + '\n' + library.getChoiceValue(node), library.getNodeDescription(node),
+        library.getElementType(node) + "\n" + library.getElementDescription(node),
+        library.getExtensionRef(node) + "\n" + library.isExtensionMandatory(node), icons.toString(), properties.toString() };
+  }
+
+  private static boolean same(final String a, final String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  /**
+   * @return the files of the new version that are not in the old one, including its XML.
+   */
+  Set<String> getAddedFiles() {
+    return Collections.unmodifiableSet(addedFiles);
+  }
+
+  /**
+   * @return the icons and other files, XML apart, that only exist in the new version.
+   */
+  public Set<String> getAddedIcons() {
+    return icons(addedFiles);
+  }
+
+  /**
+   * @return the unique-codes of the nodes that only exist in the new version, in its document order.
+   */
+  public List<String> getAddedNodes() {
+    return Collections.unmodifiableList(addedNodes);
+  }
+
+  Set<String> getChangedFiles() {
+    return Collections.unmodifiableSet(changedFiles);
+  }
+
+  /**
+   * @return the icons and other files, XML apart, whose content differs between the versions.
+   */
+  public Set<String> getChangedIcons() {
+    return icons(changedFiles);
+  }
+
+  Map<String, String> getFromFiles() {
+    return Collections.unmodifiableMap(fromFiles);
+  }
+
+  /**
+   * @return the fields that differ, by unique-code of the nodes existing in both versions, in the document order of the new one.
+   */
+  public Map<String, List<String>> getModifiedNodes() {
+    return Collections.unmodifiableMap(modifiedNodes);
+  }
+
+  Set<String> getRemovedFiles() {
+    return Collections.unmodifiableSet(removedFiles);
+  }
+
+  public Set<String> getRemovedIcons() {
+    return icons(removedFiles);
+  }
+
+  /**
+   * @return the unique-codes of the nodes that only exist in the old version, in its document order.
+   */
+  public List<String> getRemovedNodes() {
+    return Collections.unmodifiableList(removedNodes);
+  }
+
+  Map<String, String> getToFiles() {
+    return Collections.unmodifiableMap(toFiles);
+  }
+
+  /**
+   * @return true when the hierarchies and the icons of both versions are the same.
+   */
+  public boolean isEmpty() {
+    return addedNodes.isEmpty() && removedNodes.isEmpty() && modifiedNodes.isEmpty() && getAddedIcons().isEmpty()
+        && getRemovedIcons().isEmpty() && getChangedIcons().isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("nodes added %s, removed %s, modified %s; icons added %s, removed %s, changed %s", addedNodes, removedNodes,
+        modifiedNodes, getAddedIcons(), getRemovedIcons(), getChangedIcons());
+  }
+
+  private void compareFiles() {
+    for (final Map.Entry<String, String> entry : toFiles.entrySet()) {
+      final String fromHash = fromFiles.get(entry.getKey());
+      if (fromHash == null) {
+        addedFiles.add(entry.getKey());
+      } else if (!fromHash.equals(entry.getValue())) {
+        changedFiles.add(entry.getKey());
+      }
+    }
+    for (final String path : fromFiles.keySet()) {
+      if (!toFiles.containsKey(path)) {
+        removedFiles.add(path);
+      }
+    }
+  }
+
+  private void compareNodes(@Nonnull final FlatLibrary from, @Nonnull final FlatLibrary to) {
+    final Map<String, Integer> fromNodes = new HashMap<>(from.getNodeCount() * 2);
+    for (int node = 0; node < from.getNodeCount(); node++) {
+      final String uniqueCode = from.getUniqueCode(node);
+      if (!fromNodes.containsKey(uniqueCode)) {
+        fromNodes.put(uniqueCode, node);
+      }
+    }
+
+    final Set<String> matched = new HashSet<>(to.getNodeCount() * 2);
+    for (int node = 0; node < to.getNodeCount(); node++) {
+      final String uniqueCode = to.getUniqueCode(node);
+      final Integer fromNode = fromNodes.get(uniqueCode);
+      if (fromNode == null) {
+        addedNodes.add(uniqueCode);
+        continue;
+      }
+      if (!matched.add(uniqueCode)) {
+        continue;
+      }
+      final String[] before = signature(from, fromNode);
+      final String[] after = signature(to, node);
+      List<String> fields = null;
+      for (int field = 0; field < FIELDS.length; field++) {
+        if (!same(before[field], after[field])) {
+          if (fields == null) {
+            fields = new ArrayList<>(FIELDS.length);
+          }
+          fields.add(FIELDS[field]);
+        }
+      }
+      if (fields != null) {
+        modifiedNodes.put(uniqueCode, Collections.unmodifiableList(fields));
+      }
+    }
+    for (int node = 0; node < from.getNodeCount(); node++) {
+      final String uniqueCode = from.getUniqueCode(node);
+      if (fromNodes.get(uniqueCode) == node && !matched.contains(uniqueCode)) {
+        removedNodes.add(uniqueCode);
+      }
+    }
+  }
+}
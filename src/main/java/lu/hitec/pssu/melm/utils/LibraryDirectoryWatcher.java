@@ -0,0 +1,320 @@
+package lu.hitec.pssu.melm.utils;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the <code>&lt;base&gt;/&lt;library&gt;/&lt;version&gt;</code> layout of a library repository and revalidates a library
+ * version once its files stop changing for the debounce delay. Results are published to the registered
+ * {@link LibraryValidationListener}s.
+ * <p>
+ * Events are received on a dedicated thread and revalidations run one at a time on a scheduler thread, so a burst of events (an
+ * archive being extracted, a deployment script copying icons) leads to a single validation of the affected version only.
+ */
+public final class LibraryDirectoryWatcher implements Closeable {
+
+  public static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LibraryDirectoryWatcher.class);
+
+  private final Path base;
+
+  private final String baseDirectory;
+
+  private final ValidationCache cache;
+
+  private volatile boolean closed;
+
+  private final long debounceMillis;
+
+  private final List<LibraryValidationListener> listeners = new CopyOnWriteArrayList<>();
+
+  private final ConcurrentMap<LibraryVersion, ScheduledFuture<?>> pending = new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService scheduler;
+
+  private final CompiledSchema schema;
+
+  private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+
+  private final WatchService watchService;
+
+  private final Thread watchThread;
+
+  private LibraryDirectoryWatcher(@Nonnull final CompiledSchema schema, @Nonnull final File base, final long debounceMillis,
+      final ValidationCache cache) throws IOException {
+    this.schema = schema;
+    this.base = base.toPath().toAbsolutePath().normalize();
+    baseDirectory = this.base.toString();
+    this.debounceMillis = debounceMillis;
+    this.cache = cache;
+    watchService = FileSystems.getDefault().newWatchService();
+    final String threadName = "melm-watcher-" + base.getName();
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(@Nonnull final Runnable runnable) {
+        final Thread thread = new Thread(runnable, threadName + "-validation");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    watchThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        processEvents();
+      }
+    }, threadName);
+    watchThread.setDaemon(true);
+  }
+
+  /**
+   * Starts watching a base directory with the {@link #DEFAULT_DEBOUNCE_MILLIS default debounce delay} and no validation cache.
+   */
+  public static LibraryDirectoryWatcher start(@Nonnull final String xsdPath, @Nonnull final String baseDirectory)
+      throws LibraryValidatorException {
+    return start(xsdPath, baseDirectory, DEFAULT_DEBOUNCE_MILLIS, null);
+  }
+
+  /**
+   * Starts watching a base directory. Library versions already present are not validated until one of their files changes.
+   *
+   * @param cache optional verdict cache, left open when the watcher is closed.
+   */
+  public static LibraryDirectoryWatcher start(@Nonnull final String xsdPath, @Nonnull final String baseDirectory,
+      final long debounceMillis, final ValidationCache cache) throws LibraryValidatorException {
+    assert xsdPath != null : "XSD path is null";
+    assert baseDirectory != null : "Base directory is null";
+    assert debounceMillis >= 0 : "Debounce delay is negative";
+    final File base = new File(baseDirectory);
+    if (!base.isDirectory()) {
+      final String msg = String.format("Base directory %s does not exist / is not a directory", baseDirectory);
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(msg);
+      }
+      throw new LibraryValidatorException(msg);
+    }
+
+    final CompiledSchema schema = SchemaRegistry.getSchema(xsdPath);
+    LibraryDirectoryWatcher watcher = null;
+    try {
+      watcher = new LibraryDirectoryWatcher(schema, base, debounceMillis, cache);
+      watcher.registerTree(watcher.base);
+      watcher.watchThread.start();
+      return watcher;
+    } catch (final IOException e) {
+      if (watcher != null) {
+        watcher.close();
+      }
+      throw new LibraryValidatorException(String.format("Error watching %s", baseDirectory), e);
+    }
+  }
+
+  public void addListener(@Nonnull final LibraryValidationListener listener) {
+    assert listener != null : "Listener is null";
+    listeners.add(listener);
+  }
+
+  /**
+   * Stops watching. Pending revalidations are dropped and a running one is left to complete without blocking the caller.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    try {
+      watchService.close();
+    } catch (final IOException e) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("Error closing the watch service", e);
+      }
+    }
+    scheduler.shutdownNow();
+  }
+
+  public void removeListener(@Nonnull final LibraryValidationListener listener) {
+    assert listener != null : "Listener is null";
+    listeners.remove(listener);
+  }
+
+  /**
+   * Schedules the revalidation of a library version, postponing the one already pending for it.
+   */
+  void schedule(@Nonnull final LibraryVersion libraryVersion) {
+    if (closed) {
+      return;
+    }
+    final ScheduledFuture<?> revalidation;
+    try {
+      revalidation = scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          revalidate(libraryVersion);
+        }
+      }, debounceMillis, TimeUnit.MILLISECONDS);
+    } catch (final RejectedExecutionException e) {
+      // closed meanwhile
+      return;
+    }
+    // completed revalidations stay in the map: cancelling them is a no-op and there is one entry per version at most
+    final ScheduledFuture<?> previous = pending.put(libraryVersion, revalidation);
+    if (previous != null) {
+      previous.cancel(false);
+    }
+  }
+
+  private void onChange(@Nonnull final Path changed) {
+    final Path relative = base.relativize(changed);
+    final int depth = relative.getNameCount();
+    if (depth == 0 || relative.getName(0).toString().startsWith(".")) {
+      return;
+    }
+    if (depth == 1) {
+      // a library directory appeared or vanished as a whole, along with its versions
+      for (final Path directory : watchedDirectories.values()) {
+        if (directory.getParent() != null && directory.getParent().equals(changed)) {
+          onChange(directory);
+        }
+      }
+      final File[] versionDirs = changed.toFile().listFiles();
+      if (versionDirs != null) {
+        for (final File versionDir : versionDirs) {
+          if (versionDir.isDirectory()) {
+            onChange(versionDir.toPath());
+          }
+        }
+      }
+      return;
+    }
+    final String version = relative.getName(1).toString();
+    if (!version.startsWith(".")) {
+      schedule(new LibraryVersion(relative.getName(0).toString(), version));
+    }
+  }
+
+  private void processEvents() {
+    while (!closed) {
+      final WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (final InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+      final Path directory = watchedDirectories.get(key);
+      for (final WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == OVERFLOW) {
+          rescan();
+        } else if (directory != null) {
+          final Path changed = directory.resolve((Path) event.context());
+          if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+              registerTree(changed);
+            } catch (final IOException e) {
+              if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(String.format("Error watching %s", changed), e);
+              }
+            }
+          }
+          onChange(changed);
+        }
+      }
+      if (!key.reset()) {
+        watchedDirectories.remove(key);
+      }
+    }
+  }
+
+  private void publish(@Nonnull final LibraryValidationResult result) {
+    for (final LibraryValidationListener listener : listeners) {
+      try {
+        listener.libraryValidated(result);
+      } catch (final RuntimeException e) {
+        LOGGER.warn(String.format("Listener failed on the result of %s", result.getLibraryVersion()), e);
+      }
+    }
+  }
+
+  private void registerTree(@Nonnull final Path root) throws IOException {
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(@Nonnull final Path dir, @Nonnull final BasicFileAttributes attrs) throws IOException {
+        if (!dir.equals(base) && dir.getFileName().toString().startsWith(".")) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        watchedDirectories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(@Nonnull final Path file, @Nonnull final IOException e) {
+        // the directory vanished while being walked, its deletion event will follow
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * Events were lost: watches are renewed and every library version is revalidated.
+   */
+  private void rescan() {
+    try {
+      registerTree(base);
+      for (final LibraryVersion libraryVersion : LibraryRepositoryValidator.discoverLibraryVersions(baseDirectory)) {
+        schedule(libraryVersion);
+      }
+    } catch (final IOException | LibraryValidatorException e) {
+      LOGGER.warn(String.format("Error rescanning %s", baseDirectory), e);
+    }
+  }
+
+  private void revalidate(@Nonnull final LibraryVersion libraryVersion) {
+    final File versionDir = base.resolve(libraryVersion.getLibraryName()).resolve(libraryVersion.getVersion()).toFile();
+    final LibraryValidationResult result;
+    if (versionDir.isDirectory()) {
+      result = LibraryValidator.validateLibraryVersion(schema, baseDirectory, libraryVersion, cache);
+    } else {
+      // not validated: looking the XML up would create the directories again
+      result = LibraryValidationResult.failure(libraryVersion, null, new LibraryValidatorException(String.format(
+          "Library version %s was removed", libraryVersion)), 0);
+    }
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(String.format("Revalidated %s: %s", libraryVersion, result.isValid() ? "valid" : result.getError().getMessage()));
+    }
+    if (!closed) {
+      publish(result);
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * File tree operations used to build an unzipped library folder in a staging folder and to move it into place once complete.
+ */
+final class LibraryFolders {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LibraryFolders.class);
+
+  private LibraryFolders() {
+  }
+
+  static void copy(@Nonnull final Path source, @Nonnull final Path target) throws IOException {
+    Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+        Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+        Files.copy(file, target.resolve(source.relativize(file).toString()));
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  static void delete(@Nonnull final File file) throws IOException {
+    if (!file.exists()) {
+      return;
+    }
+    Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult postVisitDirectory(final Path dir, final IOException e) throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(final Path path, final BasicFileAttributes attrs) throws IOException {
+        Files.delete(path);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * Deletes what a failed operation left behind, without hiding the reason of the failure.
+   */
+  static void discard(@Nonnull final File file) {
+    try {
+      delete(file);
+    } catch (final IOException e) {
+      LOGGER.warn(String.format("Failed to delete %s", file.getAbsolutePath()), e);
+    }
+  }
+
+  /**
+   * @return the outermost of the folders that do not exist yet on the way to the given one, null when it already exists.
+   */
+  static File firstMissingFolder(@Nonnull final File folder) {
+    File missing = null;
+    for (File current = folder; current != null && !current.exists(); current = current.getParentFile()) {
+      missing = current;
+    }
+    return missing;
+  }
+
+  /**
+   * Moves a staged folder to its target, replacing the folder already there. The old folder is moved aside first and put back when
+   * the staged one cannot be moved.
+   */
+  static void replace(@Nonnull final File staging, @Nonnull final File target) throws IOException {
+    if (!target.exists()) {
+      Files.move(staging.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      return;
+    }
+    final File old = new File(target.getPath() + ".old");
+    delete(old);
+    Files.move(target.toPath(), old.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    try {
+      Files.move(staging.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } catch (final IOException e) {
+      Files.move(old.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      throw e;
+    }
+    discard(old);
+  }
+}
@@ -0,0 +1,207 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Immutable lookup structures over a validated library: unique-code lookup, hierarchy-code prefix queries, and reverse indexes from
+ * icon files and extension ids to nodes. Nodes are the row numbers of the underlying {@link FlatLibrary}.
+ * <p>
+ * Every structure is built in the constructor and only read afterwards, through final fields, so an index can be shared between
+ * threads and read without locking.
+ */
+public final class LibraryIndex {
+
+  private static final List<Integer> NO_NODES = Collections.emptyList();
+
+  private final Map<String, List<Integer>> extensionReferences;
+
+  private final HierarchyTrie hierarchy;
+
+  private final Map<String, List<Integer>> iconReferences;
+
+  private final FlatLibrary library;
+
+  private final Map<String, Integer> nodesByUniqueCode;
+
+  /**
+   * Builds the index of a library, which must not change afterwards. When several nodes share a unique-code, the first one in
+   * document order is indexed.
+   */
+  public LibraryIndex(@Nonnull final FlatLibrary library) {
+    assert library != null : "Library is null";
+    this.library = library;
+
+    final int nodeCount = library.getNodeCount();
+    final Map<String, Integer> uniqueCodes = new HashMap<>(nodeCount * 2);
+    final Map<String, List<Integer>> icons = new LinkedHashMap<>();
+    final Map<String, List<Integer>> extensions = new LinkedHashMap<>();
+    final HierarchyTrie.Builder trie = new HierarchyTrie.Builder();
+    for (int node = 0; node < nodeCount; node++) {
+      final String uniqueCode = library.getUniqueCode(node);
+      if (uniqueCode != null && !uniqueCodes.containsKey(uniqueCode)) {
+        uniqueCodes.put(uniqueCode, node);
+      }
+      final String hierarchyCode = library.getHierarchyCode(node);
+      if (hierarchyCode != null) {
+        trie.add(hierarchyCode, node);
+      }
+      for (int icon = 0; icon < library.getIconCount(node); icon++) {
+        addReference(icons, library.getIconFile(node, icon), node);
+      }
+      final String extensionRef = library.getExtensionRef(node);
+      if (extensionRef != null) {
+        addReference(extensions, extensionRef, node);
+      }
+    }
+    nodesByUniqueCode = Collections.unmodifiableMap(uniqueCodes);
+    iconReferences = freeze(icons);
+    extensionReferences = freeze(extensions);
+    hierarchy = trie.build();
+  }
+
+  private static void addReference(@Nonnull final Map<String, List<Integer>> references, @Nonnull final String key, final int node) {
+    List<Integer> nodes = references.get(key);
+    if (nodes == null) {
+      nodes = new ArrayList<>(2);
+      references.put(key, nodes);
+    }
+    // an element referencing the same icon twice (e.g. as icon and line-end-icon) is listed once
+    if (nodes.isEmpty() || nodes.get(nodes.size() - 1) != node) {
+      nodes.add(node);
+    }
+  }
+
+  private static Map<String, List<Integer>> freeze(@Nonnull final Map<String, List<Integer>> references) {
+    final Map<String, List<Integer>> frozen = new LinkedHashMap<>(references.size() * 2);
+    for (final Map.Entry<String, List<Integer>> entry : references.entrySet()) {
+      frozen.put(entry.getKey(), Collections.unmodifiableList(Arrays.asList(entry.getValue().toArray(new Integer[0]))));
+    }
+    return Collections.unmodifiableMap(frozen);
+  }
+
+  /**
+   * @return the referenced extension ids, in document order.
+   */
+  public Set<String> getExtensionIds() {
+    return extensionReferences.keySet();
+  }
+
+  /**
+   * @return the nodes whose element references the given extension id, in document order.
+   */
+  public List<Integer> getExtensionReferences(@Nonnull final String extensionId) {
+    assert extensionId != null : "Extension id is null";
+    final List<Integer> nodes = extensionReferences.get(extensionId);
+    return nodes == null ? NO_NODES : nodes;
+  }
+
+  /**
+   * @return the referenced icon files, as written in the XML, in document order.
+   */
+  public Set<String> getIconFiles() {
+    return iconReferences.keySet();
+  }
+
+  /**
+   * @return the nodes whose element uses the given icon file, as written in the XML, in document order.
+   */
+  public List<Integer> getIconReferences(@Nonnull final String iconFile) {
+    assert iconFile != null : "Icon file is null";
+    final List<Integer> nodes = iconReferences.get(iconFile);
+    return nodes == null ? NO_NODES : nodes;
+  }
+
+  public FlatLibrary getLibrary() {
+    return library;
+  }
+
+  /**
+   * @return the node with the given unique-code, -1 if there is none.
+   */
+  public int getNode(@Nonnull final String uniqueCode) {
+    assert uniqueCode != null : "Unique code is null";
+    final Integer node = nodesByUniqueCode.get(uniqueCode);
+    return node == null ? -1 : node;
+  }
+
+  /**
+   * @return the nodes whose hierarchy-code is the given one or lies below it, in document order: <code>1.1</code> covers
+   *         <code>1.1</code> and <code>1.1.2</code> but not <code>1.10</code>.
+   */
+  public List<Integer> getNodesUnder(@Nonnull final String hierarchyCode) {
+    assert hierarchyCode != null : "Hierarchy code is null";
+    return hierarchy.getSubtree(hierarchyCode);
+  }
+
+  /**
+   * Trie over hierarchy codes, one level per dot-separated segment. Each entry holds the nodes of its whole subtree, so a prefix query
+   * is a walk down the segments of the prefix.
+   */
+  private static final class HierarchyTrie {
+
+    private final Map<String, HierarchyTrie> children;
+
+    private final List<Integer> subtree;
+
+    private HierarchyTrie(@Nonnull final Map<String, HierarchyTrie> children, @Nonnull final List<Integer> subtree) {
+      this.children = children;
+      this.subtree = subtree;
+    }
+
+    List<Integer> getSubtree(@Nonnull final String hierarchyCode) {
+      HierarchyTrie entry = this;
+      for (final String segment : hierarchyCode.split("\\.")) {
+        if (segment.isEmpty()) {
+          continue;
+        }
+        entry = entry.children.get(segment);
+        if (entry == null) {
+          return NO_NODES;
+        }
+      }
+      return entry.subtree;
+    }
+
+    private static final class Builder {
+
+      private final Map<String, Builder> children = new HashMap<>();
+
+      private final List<Integer> subtree = new ArrayList<>();
+
+      void add(@Nonnull final String hierarchyCode, final int node) {
+        Builder entry = this;
+        entry.subtree.add(node);
+        for (final String segment : hierarchyCode.split("\\.")) {
+          if (segment.isEmpty()) {
+            continue;
+          }
+          Builder child = entry.children.get(segment);
+          if (child == null) {
+            child = new Builder();
+            entry.children.put(segment, child);
+          }
+          entry = child;
+          entry.subtree.add(node);
+        }
+      }
+
+      HierarchyTrie build() {
+        final Map<String, HierarchyTrie> built = new HashMap<>(children.size() * 2);
+        for (final Map.Entry<String, Builder> child : children.entrySet()) {
+          built.put(child.getKey(), child.getValue().build());
+        }
+        return new HierarchyTrie(Collections.unmodifiableMap(built), Collections.unmodifiableList(Arrays.asList(subtree
+            .toArray(new Integer[0]))));
+      }
+    }
+  }
+}
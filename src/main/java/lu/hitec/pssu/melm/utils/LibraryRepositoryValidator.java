@@ -0,0 +1,129 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Validates every <code>&lt;library&gt;/&lt;version&gt;</code> found under a base directory in parallel. Failures are collected in
+ * the {@link LibraryValidationReport} instead of aborting the whole run.
+ */
+public final class LibraryRepositoryValidator {
+
+  private static final FileFilter DIRECTORIES = new FileFilter() {
+    @Override
+    public boolean accept(@Nonnull final File file) {
+      return file.isDirectory() && !file.getName().startsWith(".");
+    }
+  };
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LibraryRepositoryValidator.class);
+
+  private LibraryRepositoryValidator() {
+  }
+
+  /**
+   * Lists the library versions of a base directory, sorted by library name and version.
+   */
+  public static List<LibraryVersion> discoverLibraryVersions(@Nonnull final String baseDirectory) throws LibraryValidatorException {
+    assert baseDirectory != null : "Base directory is null";
+    final File base = new File(baseDirectory);
+    if (!base.isDirectory()) {
+      final String msg = String.format("Base directory %s does not exist / is not a directory", baseDirectory);
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(msg);
+      }
+      throw new LibraryValidatorException(msg);
+    }
+
+    final List<LibraryVersion> libraryVersions = new ArrayList<>();
+    for (final File libraryDir : listDirectories(base)) {
+      for (final File versionDir : listDirectories(libraryDir)) {
+        libraryVersions.add(new LibraryVersion(libraryDir.getName(), versionDir.getName()));
+      }
+    }
+    Collections.sort(libraryVersions);
+    return libraryVersions;
+  }
+
+  /**
+   * Validates the repository on a fork-join pool sized to the number of available processors.
+   */
+  public static LibraryValidationReport validateRepository(@Nonnull final String xsdPath, @Nonnull final String baseDirectory)
+      throws LibraryValidatorException {
+    final ForkJoinPool pool = new ForkJoinPool();
+    try {
+      return validateRepository(xsdPath, baseDirectory, pool);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Validates the repository on the given executor, which is left running.
+   */
+  public static LibraryValidationReport validateRepository(@Nonnull final String xsdPath, @Nonnull final String baseDirectory,
+      @Nonnull final ExecutorService executor) throws LibraryValidatorException {
+    return validateRepository(xsdPath, baseDirectory, executor, null);
+  }
+
+  /**
+   * Validates the repository on the given executor, only revalidating the libraries whose cached verdict is outdated.
+   */
+  public static LibraryValidationReport validateRepository(@Nonnull final String xsdPath, @Nonnull final String baseDirectory,
+      @Nonnull final ExecutorService executor, final ValidationCache cache) throws LibraryValidatorException {
+    assert xsdPath != null : "XSD path is null";
+    assert baseDirectory != null : "Base directory is null";
+    assert executor != null : "Executor is null";
+
+    final CompiledSchema schema = SchemaRegistry.getSchema(xsdPath);
+    final List<LibraryVersion> libraryVersions = discoverLibraryVersions(baseDirectory);
+    final List<Callable<LibraryValidationResult>> tasks = new ArrayList<>(libraryVersions.size());
+    for (final LibraryVersion libraryVersion : libraryVersions) {
+      tasks.add(new Callable<LibraryValidationResult>() {
+        @Override
+        public LibraryValidationResult call() {
+          return LibraryValidator.validateLibraryVersion(schema, baseDirectory, libraryVersion, cache);
+        }
+      });
+    }
+
+    final long start = System.nanoTime();
+    final List<LibraryValidationResult> results = new ArrayList<>(tasks.size());
+    try {
+      for (final Future<LibraryValidationResult> future : executor.invokeAll(tasks)) {
+        results.add(future.get());
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new LibraryValidatorException(String.format("Interrupted while validating %s", baseDirectory), e);
+    } catch (final ExecutionException e) {
+      throw new LibraryValidatorException(String.format("Error in validating %s", baseDirectory), e);
+    }
+
+    final LibraryValidationReport report = new LibraryValidationReport(results);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(String.format("Validated %s in %d ms: %s", baseDirectory, (System.nanoTime() - start) / 1000000L, report));
+    }
+    return report;
+  }
+
+  private static File[] listDirectories(@Nonnull final File directory) {
+    final File[] directories = directory.listFiles(DIRECTORIES);
+    return directories == null ? new File[0] : directories;
+  }
+}
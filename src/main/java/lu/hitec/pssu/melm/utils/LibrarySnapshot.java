@@ -0,0 +1,319 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import javax.annotation.Nonnull;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+/**
+ * Compact binary snapshot of a validated {@link LibraryTree}, read back through a memory mapping: opening a snapshot costs no XML
+ * parsing and strings are only decoded when accessed.
+ * <p>
+ * A snapshot records the content hash of the library XML it was built from: {@link #open(File, File)} rejects it once the XML has
+ * changed.
+ * <p>
+ * Layout, big endian: magic, format version, the source hash (length, UTF-8 bytes padded to 4 bytes), the five description string
+ * indexes, the string table (count, end offsets, UTF-8 bytes padded to 4 bytes), then the node, icon, custom property, extension and
+ * option tables, each as a row count followed by its ints.
+ */
+public final class LibrarySnapshot extends FlatLibrary {
+
+  private static final int FORMAT_VERSION = 2;
+
+  private static final int MAGIC = 0x4d454c53; // MELS
+
+  private static final int MAX_HASH_LENGTH = 128;
+
+  private final IntBuffer extensions;
+
+  private final IntBuffer icons;
+
+  private final LibraryDescription description;
+
+  private final IntBuffer nodes;
+
+  private final IntBuffer options;
+
+  private final IntBuffer properties;
+
+  private final String sourceHash;
+
+  private final ByteBuffer stringData;
+
+  private final IntBuffer stringEnds;
+
+  private final String[] strings;
+
+  private LibrarySnapshot(@Nonnull final ByteBuffer buffer) throws LibraryValidatorException {
+    if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+      throw new LibraryValidatorException("Not a library snapshot or unsupported snapshot version");
+    }
+    final int hashLength = buffer.getInt();
+    if (hashLength < 0 || hashLength > MAX_HASH_LENGTH) {
+      throw new LibraryValidatorException(String.format("Invalid source hash length %d", hashLength));
+    }
+    final byte[] hash = new byte[hashLength];
+    buffer.get(hash);
+    buffer.position(buffer.position() + padded(hashLength) - hashLength);
+    sourceHash = new String(hash, StandardCharsets.UTF_8);
+    final int[] descriptionStrings = new int[5];
+    for (int i = 0; i < descriptionStrings.length; i++) {
+      descriptionStrings[i] = buffer.getInt();
+    }
+
+    final int stringCount = buffer.getInt();
+    stringEnds = slice(buffer, stringCount);
+    final int stringBytes = stringCount == 0 ? 0 : stringEnds.get(stringCount - 1);
+    final ByteBuffer data = buffer.slice();
+    data.limit(stringBytes);
+    stringData = data;
+    buffer.position(buffer.position() + padded(stringBytes));
+    strings = new String[stringCount];
+
+    nodes = slice(buffer, buffer.getInt() * NODE_COLUMNS);
+    icons = slice(buffer, buffer.getInt() * ICON_COLUMNS);
+    properties = slice(buffer, buffer.getInt() * PROPERTY_COLUMNS);
+    extensions = slice(buffer, buffer.getInt() * EXTENSION_COLUMNS);
+    options = slice(buffer, buffer.getInt() * OPTION_COLUMNS);
+
+    description = new LibraryDescription(string(descriptionStrings[0]), string(descriptionStrings[1]), string(descriptionStrings[2]),
+        string(descriptionStrings[3]), string(descriptionStrings[4]));
+  }
+
+  /**
+   * Maps a snapshot file in memory, without checking it against the library XML. The mapping stays valid after the method returns and
+   * is released with the snapshot.
+   */
+  public static LibrarySnapshot open(@Nonnull final File snapshotFile) throws LibraryValidatorException {
+    assert snapshotFile != null : "Snapshot file is null";
+    try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "r"); FileChannel channel = file.getChannel()) {
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new LibrarySnapshot(buffer);
+    } catch (final IOException | RuntimeException e) {
+      throw new LibraryValidatorException(String.format("Error in reading snapshot %s: %s", snapshotFile.getName(), e.getMessage()), e);
+    }
+  }
+
+  /**
+   * Maps a snapshot file in memory after checking that it was built from the current content of the library XML.
+   *
+   * @throws LibraryValidatorException when the XML changed since the snapshot was written.
+   */
+  public static LibrarySnapshot open(@Nonnull final File snapshotFile, @Nonnull final File xmlFile) throws LibraryValidatorException {
+    assert xmlFile != null : "Xml file is null";
+    final LibrarySnapshot snapshot = open(snapshotFile);
+    final String hash;
+    try {
+      hash = ContentHash.hash(xmlFile);
+    } catch (final IOException e) {
+      throw new LibraryValidatorException(String.format("Error in hashing %s: %s", xmlFile.getName(), e.getMessage()), e);
+    }
+    if (!hash.equals(snapshot.sourceHash)) {
+      throw new LibraryValidatorException(String.format("Snapshot %s is out of date: %s changed since it was written", snapshotFile
+          .getName(), xmlFile.getName()));
+    }
+    return snapshot;
+  }
+
+  /**
+   * Writes the snapshot of a library tree parsed from the given XML, replacing the target file atomically.
+   */
+  public static void write(@Nonnull final LibraryTree tree, @Nonnull final File xmlFile, @Nonnull final File snapshotFile)
+      throws LibraryValidatorException {
+    assert xmlFile != null : "Xml file is null";
+    try {
+      write(tree, ContentHash.hash(xmlFile), snapshotFile);
+    } catch (final IOException e) {
+      throw new LibraryValidatorException(String.format("Error in hashing %s: %s", xmlFile.getName(), e.getMessage()), e);
+    }
+  }
+
+  /**
+   * @param sourceHash content hash of the XML the tree was parsed from, taken before parsing it.
+   */
+  static void write(@Nonnull final LibraryTree tree, @Nonnull final String sourceHash, @Nonnull final File snapshotFile)
+      throws LibraryValidatorException {
+    assert tree != null : "Tree is null";
+    assert sourceHash != null : "Source hash is null";
+    assert snapshotFile != null : "Snapshot file is null";
+    final File tmp = new File(snapshotFile.getPath() + ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+        write(tree, sourceHash, out);
+      }
+      Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (final IOException e) {
+      try {
+        Files.deleteIfExists(tmp.toPath());
+      } catch (final IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw new LibraryValidatorException(String.format("Error in writing snapshot %s: %s", snapshotFile.getName(), e.getMessage()), e);
+    }
+  }
+
+  private static int indexOf(@Nonnull final String[] strings, final String value) {
+    if (value == null) {
+      return -1;
+    }
+    for (int i = 0; i < strings.length; i++) {
+      if (strings[i].equals(value)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int padded(final int length) {
+    return (length + 3) & ~3;
+  }
+
+  private static IntBuffer slice(@Nonnull final ByteBuffer buffer, final int intCount) {
+    final ByteBuffer bytes = buffer.slice();
+    bytes.limit(intCount * 4);
+    buffer.position(buffer.position() + intCount * 4);
+    return bytes.asIntBuffer();
+  }
+
+  private static void write(@Nonnull final LibraryTree tree, @Nonnull final String sourceHash, @Nonnull final DataOutputStream out)
+      throws IOException {
+    final String[] strings = tree.getStrings();
+    final LibraryDescription description = tree.getLibraryDescription();
+    final String[] descriptionValues = new String[] { description.getLibraryType(), description.getLibraryVersion(),
+        description.getLibraryName(), description.getLibraryDisplayName(), description.getLibraryIcon() };
+
+    // the description strings may not occur in the hierarchy, they are appended to the table when missing
+    final String[] table = new String[strings.length + descriptionValues.length];
+    System.arraycopy(strings, 0, table, 0, strings.length);
+    int stringCount = strings.length;
+    final int[] descriptionStrings = new int[descriptionValues.length];
+    for (int i = 0; i < descriptionValues.length; i++) {
+      final String value = descriptionValues[i];
+      int index = indexOf(strings, value);
+      if (index < 0 && value != null) {
+        index = stringCount;
+        table[stringCount++] = value;
+      }
+      descriptionStrings[i] = index;
+    }
+
+    out.writeInt(MAGIC);
+    out.writeInt(FORMAT_VERSION);
+    final byte[] hash = sourceHash.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(hash.length);
+    out.write(hash);
+    for (int i = hash.length; i < padded(hash.length); i++) {
+      out.writeByte(0);
+    }
+    for (final int index : descriptionStrings) {
+      out.writeInt(index);
+    }
+
+    final byte[][] encoded = new byte[stringCount][];
+    out.writeInt(stringCount);
+    int end = 0;
+    for (int i = 0; i < stringCount; i++) {
+      encoded[i] = table[i].getBytes(StandardCharsets.UTF_8);
+      end += encoded[i].length;
+      out.writeInt(end);
+    }
+    for (final byte[] bytes : encoded) {
+      out.write(bytes);
+    }
+    for (int i = end; i < padded(end); i++) {
+      out.writeByte(0);
+    }
+
+    writeTable(out, tree.getNodes(), NODE_COLUMNS);
+    writeTable(out, tree.getIcons(), ICON_COLUMNS);
+    writeTable(out, tree.getProperties(), PROPERTY_COLUMNS);
+    writeTable(out, tree.getExtensions(), EXTENSION_COLUMNS);
+    writeTable(out, tree.getOptions(), OPTION_COLUMNS);
+  }
+
+  private static void writeTable(@Nonnull final DataOutputStream out, @Nonnull final int[] table, final int columns) throws IOException {
+    out.writeInt(table.length / columns);
+    for (final int value : table) {
+      out.writeInt(value);
+    }
+  }
+
+  @Override
+  public int getExtensionCount() {
+    return extensions.limit() / EXTENSION_COLUMNS;
+  }
+
+  @Override
+  public LibraryDescription getLibraryDescription() {
+    return description;
+  }
+
+  @Override
+  public int getNodeCount() {
+    return nodes.limit() / NODE_COLUMNS;
+  }
+
+  /**
+   * @return the content hash of the library XML the snapshot was built from.
+   */
+  public String getSourceHash() {
+    return sourceHash;
+  }
+
+  @Override
+  int extension(final int extension, final int column) {
+    return extensions.get(extension * EXTENSION_COLUMNS + column);
+  }
+
+  @Override
+  int icon(final int icon, final int column) {
+    return icons.get(icon * ICON_COLUMNS + column);
+  }
+
+  @Override
+  int node(final int node, final int column) {
+    return nodes.get(node * NODE_COLUMNS + column);
+  }
+
+  @Override
+  int option(final int option, final int column) {
+    return options.get(option * OPTION_COLUMNS + column);
+  }
+
+  @Override
+  int property(final int property, final int column) {
+    return properties.get(property * PROPERTY_COLUMNS + column);
+  }
+
+  @Override
+  String string(final int index) {
+    if (index < 0) {
+      return null;
+    }
+    // racy but benign: strings are immutable and decoding is idempotent
+    String value = strings[index];
+    if (value == null) {
+      final int start = index == 0 ? 0 : stringEnds.get(index - 1);
+      final byte[] bytes = new byte[stringEnds.get(index) - start];
+      final ByteBuffer data = stringData.duplicate();
+      data.position(start);
+      data.get(bytes);
+      value = new String(bytes, StandardCharsets.UTF_8);
+      strings[index] = value;
+    }
+    return value;
+  }
+}
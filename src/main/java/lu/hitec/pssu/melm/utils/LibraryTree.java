@@ -0,0 +1,104 @@
+package lu.hitec.pssu.melm.utils;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Library hierarchy collected while validating a library, held in heap arrays. It can be persisted as a {@link LibrarySnapshot}.
+ */
+public final class LibraryTree extends FlatLibrary {
+
+  private final LibraryDescription description;
+
+  private final int[] extensions;
+
+  private final int[] icons;
+
+  private final int[] nodes;
+
+  private final int[] options;
+
+  private final int[] properties;
+
+  private final String[] strings;
+
+  LibraryTree(@Nonnull final LibraryDescription description, @Nonnull final String[] strings, @Nonnull final int[] nodes,
+      @Nonnull final int[] icons, @Nonnull final int[] properties, @Nonnull final int[] extensions, @Nonnull final int[] options) {
+    assert description != null : "Description is null";
+    this.description = description;
+    this.strings = strings;
+    this.nodes = nodes;
+    this.icons = icons;
+    this.properties = properties;
+    this.extensions = extensions;
+    this.options = options;
+  }
+
+  @Override
+  public int getExtensionCount() {
+    return extensions.length / EXTENSION_COLUMNS;
+  }
+
+  @Override
+  public LibraryDescription getLibraryDescription() {
+    return description;
+  }
+
+  @Override
+  public int getNodeCount() {
+    return nodes.length / NODE_COLUMNS;
+  }
+
+  @Override
+  int extension(final int extension, final int column) {
+    return extensions[extension * EXTENSION_COLUMNS + column];
+  }
+
+  int[] getExtensions() {
+    return extensions;
+  }
+
+  int[] getIcons() {
+    return icons;
+  }
+
+  int[] getNodes() {
+    return nodes;
+  }
+
+  int[] getOptions() {
+    return options;
+  }
+
+  int[] getProperties() {
+    return properties;
+  }
+
+  String[] getStrings() {
+    return strings;
+  }
+
+  @Override
+  int icon(final int icon, final int column) {
+    return icons[icon * ICON_COLUMNS + column];
+  }
+
+  @Override
+  int node(final int node, final int column) {
+    return nodes[node * NODE_COLUMNS + column];
+  }
+
+  @Override
+  int option(final int option, final int column) {
+    return options[option * OPTION_COLUMNS + column];
+  }
+
+  @Override
+  int property(final int property, final int column) {
+    return properties[property * PROPERTY_COLUMNS + column];
+  }
+
+  @Override
+  String string(final int index) {
+    return index < 0 ? null : strings[index];
+  }
+}
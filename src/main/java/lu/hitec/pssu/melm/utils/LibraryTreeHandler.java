@@ -0,0 +1,252 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Streaming handler building the {@link LibraryTree} of a library XML: choice/node/element hierarchy, icons, custom properties and
+ * extensions, with every distinct string stored once.
+ */
+class LibraryTreeHandler extends DefaultHandler {
+
+  private final IntList choiceVars = new IntList();
+
+  private int currentExtension = -1;
+
+  private int currentNode = -1;
+
+  private int currentOption = -1;
+
+  private final IntList extensions = new IntList();
+
+  private final IntList icons = new IntList();
+
+  private boolean inElement;
+
+  private final IntList lastChildren = new IntList();
+
+  private int lastRootNode = -1;
+
+  private final IntList nodes = new IntList();
+
+  private final IntList options = new IntList();
+
+  private final IntList properties = new IntList();
+
+  private final Map<String, Integer> stringIndexes = new HashMap<>();
+
+  private final List<String> strings = new ArrayList<>();
+
+  LibraryTree build(@Nonnull final LibraryDescription description) {
+    return new LibraryTree(description, strings.toArray(new String[strings.size()]), nodes.toArray(), icons.toArray(),
+        properties.toArray(), extensions.toArray(), options.toArray());
+  }
+
+  @Override
+  public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+    final String name = localName.isEmpty() ? qName : localName;
+    switch (name) {
+    case "choice":
+      choiceVars.pop();
+      break;
+    case "node":
+      currentNode = nodes.get(currentNode * FlatLibrary.NODE_COLUMNS + FlatLibrary.NODE_PARENT);
+      break;
+    case "element":
+      inElement = false;
+      break;
+    case "extension":
+      if (!inElement) {
+        currentExtension = -1;
+      }
+      break;
+    case "option":
+      currentOption = -1;
+      break;
+    default:
+      break;
+    }
+  }
+
+  @Override
+  public void startElement(final String uri, final String localName, final String qName, final Attributes attributes)
+      throws SAXException {
+    final String name = localName.isEmpty() ? qName : localName;
+    switch (name) {
+    case "choice":
+      choiceVars.add(intern(attributes.getValue("choice-var")));
+      break;
+    case "node":
+      startNode(attributes);
+      break;
+    case "element":
+      inElement = true;
+      setNode(FlatLibrary.NODE_ELEMENT_DESCRIPTION, intern(attributes.getValue("description")));
+      setNode(FlatLibrary.NODE_FIRST_ICON, icons.size() / FlatLibrary.ICON_COLUMNS);
+      setNode(FlatLibrary.NODE_FIRST_PROPERTY, properties.size() / FlatLibrary.PROPERTY_COLUMNS);
+      break;
+    case "point":
+      setNode(FlatLibrary.NODE_ELEMENT_TYPE, ElementType.POINT.ordinal());
+      break;
+    case "line":
+      setNode(FlatLibrary.NODE_ELEMENT_TYPE, ElementType.LINE.ordinal());
+      break;
+    case "area":
+      setNode(FlatLibrary.NODE_ELEMENT_TYPE, ElementType.AREA.ordinal());
+      break;
+    case "customProperty":
+      properties.add(intern(attributes.getValue("key")));
+      properties.add(intern(attributes.getValue("type")));
+      incrementNode(FlatLibrary.NODE_PROPERTY_COUNT);
+      break;
+    case "extension":
+      if (inElement) {
+        setNode(FlatLibrary.NODE_EXTENSION_REF, intern(attributes.getValue("ref")));
+        setNode(FlatLibrary.NODE_EXTENSION_MANDATORY, Boolean.parseBoolean(attributes.getValue("mandatory")) ? 1 : 0);
+      } else {
+        currentExtension = extensions.size() / FlatLibrary.EXTENSION_COLUMNS;
+        extensions.add(intern(attributes.getValue("id")));
+        extensions.add(intern(attributes.getValue("extension-var")));
+        extensions.add(options.size() / FlatLibrary.OPTION_COLUMNS);
+        extensions.add(0);
+      }
+      break;
+    case "option":
+      if (currentExtension >= 0) {
+        currentOption = options.size() / FlatLibrary.OPTION_COLUMNS;
+        options.add(intern(attributes.getValue("extension-value")));
+        options.add(intern(attributes.getValue("option-code")));
+        options.add(intern(attributes.getValue("description")));
+        options.add(-1);
+        final int count = currentExtension * FlatLibrary.EXTENSION_COLUMNS + FlatLibrary.EXTENSION_OPTION_COUNT;
+        extensions.set(count, extensions.get(count) + 1);
+      }
+      break;
+    case "overlay-icon":
+      if (currentOption >= 0) {
+        options.set(currentOption * FlatLibrary.OPTION_COLUMNS + FlatLibrary.OPTION_OVERLAY_ICON, intern(attributes.getValue("file")));
+      }
+      break;
+    default:
+      if (inElement && attributes.getValue("file") != null) {
+        icons.add(intern(name));
+        icons.add(intern(attributes.getValue("file")));
+        icons.add(intern(attributes.getValue("anchor")));
+        incrementNode(FlatLibrary.NODE_ICON_COUNT);
+      }
+      break;
+    }
+  }
+
+  private void incrementNode(final int column) {
+    final int index = currentNode * FlatLibrary.NODE_COLUMNS + column;
+    nodes.set(index, nodes.get(index) + 1);
+  }
+
+  private int intern(final String value) {
+    if (value == null) {
+      return -1;
+    }
+    final Integer index = stringIndexes.get(value);
+    if (index != null) {
+      return index;
+    }
+    stringIndexes.put(value, strings.size());
+    strings.add(value);
+    return strings.size() - 1;
+  }
+
+  private void setNode(final int column, final int value) {
+    nodes.set(currentNode * FlatLibrary.NODE_COLUMNS + column, value);
+  }
+
+  private void startNode(@Nonnull final Attributes attributes) {
+    final int parent = currentNode;
+    final int node = nodes.size() / FlatLibrary.NODE_COLUMNS;
+    final int[] row = new int[FlatLibrary.NODE_COLUMNS];
+    Arrays.fill(row, -1);
+    row[FlatLibrary.NODE_PARENT] = parent;
+    row[FlatLibrary.NODE_UNIQUE_CODE] = intern(attributes.getValue("unique-code"));
+    row[FlatLibrary.NODE_HIERARCHY_CODE] = intern(attributes.getValue("hierarchy-code"));
+    row[FlatLibrary.NODE_CHOICE_VAR] = choiceVars.isEmpty() ? -1 : choiceVars.peek();
+    row[FlatLibrary.NODE_CHOICE_VALUE] = intern(attributes.getValue("choice-value"));
+    row[FlatLibrary.NODE_DESCRIPTION] = intern(attributes.getValue("description"));
+    row[FlatLibrary.NODE_ELEMENT_TYPE] = ElementType.NONE.ordinal();
+    row[FlatLibrary.NODE_EXTENSION_MANDATORY] = 0;
+    row[FlatLibrary.NODE_FIRST_ICON] = icons.size() / FlatLibrary.ICON_COLUMNS;
+    row[FlatLibrary.NODE_ICON_COUNT] = 0;
+    row[FlatLibrary.NODE_FIRST_PROPERTY] = properties.size() / FlatLibrary.PROPERTY_COLUMNS;
+    row[FlatLibrary.NODE_PROPERTY_COUNT] = 0;
+    for (final int value : row) {
+      nodes.add(value);
+    }
+    lastChildren.add(-1);
+
+    final int previous = parent < 0 ? lastRootNode : lastChildren.get(parent);
+    if (previous >= 0) {
+      nodes.set(previous * FlatLibrary.NODE_COLUMNS + FlatLibrary.NODE_NEXT_SIBLING, node);
+    } else if (parent >= 0) {
+      nodes.set(parent * FlatLibrary.NODE_COLUMNS + FlatLibrary.NODE_FIRST_CHILD, node);
+    }
+    if (parent < 0) {
+      lastRootNode = node;
+    } else {
+      lastChildren.set(parent, node);
+    }
+    currentNode = node;
+  }
+
+  /**
+   * Growable array of ints, sparing the boxing of a list of integers.
+   */
+  private static final class IntList {
+
+    private int size;
+
+    private int[] values = new int[64];
+
+    void add(final int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    int get(final int index) {
+      return values[index];
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    int peek() {
+      return values[size - 1];
+    }
+
+    int pop() {
+      return values[--size];
+    }
+
+    void set(final int index, final int value) {
+      values[index] = value;
+    }
+
+    int size() {
+      return size;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package lu.hitec.pssu.melm.utils;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receives the results published by a {@link LibraryDirectoryWatcher}. Calls come from the watcher's validation thread, one at a time.
+ */
+public interface LibraryValidationListener {
+
+  void libraryValidated(@Nonnull LibraryValidationResult result);
+}
@@ -0,0 +1,58 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Per-library results of the validation of a whole library repository.
+ */
+public final class LibraryValidationReport {
+
+  private final List<LibraryValidationResult> results;
+
+  LibraryValidationReport(@Nonnull final List<LibraryValidationResult> results) {
+    assert results != null : "Results are null";
+    this.results = Collections.unmodifiableList(new ArrayList<>(results));
+  }
+
+  public List<LibraryValidationResult> getFailed() {
+    final List<LibraryValidationResult> failed = new ArrayList<>();
+    for (final LibraryValidationResult result : results) {
+      if (!result.isValid()) {
+        failed.add(result);
+      }
+    }
+    return failed;
+  }
+
+  public List<LibraryValidationResult> getResults() {
+    return results;
+  }
+
+  public List<LibraryValidationResult> getValid() {
+    final List<LibraryValidationResult> valid = new ArrayList<>();
+    for (final LibraryValidationResult result : results) {
+      if (result.isValid()) {
+        valid.add(result);
+      }
+    }
+    return valid;
+  }
+
+  public boolean isAllValid() {
+    for (final LibraryValidationResult result : results) {
+      if (!result.isValid()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("LibraryValidationReport [libraries=%d, failed=%d]", results.size(), getFailed().size());
+  }
+}
@@ -0,0 +1,84 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.io.File;
+
+import javax.annotation.Nonnull;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+/**
+ * Outcome of the validation of one library version: either the validated XML and its description, or the reason of the failure.
+ */
+public final class LibraryValidationResult {
+
+  private final LibraryDescription description;
+
+  private final long durationNanos;
+
+  private final LibraryValidatorException error;
+
+  private final LibraryVersion libraryVersion;
+
+  private final File xmlFile;
+
+  private LibraryValidationResult(@Nonnull final LibraryVersion libraryVersion, final File xmlFile, final LibraryDescription description,
+      final LibraryValidatorException error, final long durationNanos) {
+    assert libraryVersion != null : "Library version is null";
+    this.libraryVersion = libraryVersion;
+    this.xmlFile = xmlFile;
+    this.description = description;
+    this.error = error;
+    this.durationNanos = durationNanos;
+  }
+
+  static LibraryValidationResult failure(@Nonnull final LibraryVersion libraryVersion, final File xmlFile,
+      @Nonnull final LibraryValidatorException error, final long durationNanos) {
+    assert error != null : "Error is null";
+    return new LibraryValidationResult(libraryVersion, xmlFile, null, error, durationNanos);
+  }
+
+  static LibraryValidationResult success(@Nonnull final LibraryVersion libraryVersion, @Nonnull final File xmlFile,
+      @Nonnull final LibraryDescription description, final long durationNanos) {
+    assert xmlFile != null : "Xml file is null";
+    assert description != null : "Description is null";
+    return new LibraryValidationResult(libraryVersion, xmlFile, description, null, durationNanos);
+  }
+
+  /**
+   * @return the description header of the library, null if the validation failed.
+   */
+  public LibraryDescription getDescription() {
+    return description;
+  }
+
+  public long getDurationNanos() {
+    return durationNanos;
+  }
+
+  /**
+   * @return the reason of the failure, null if the library is valid.
+   */
+  public LibraryValidatorException getError() {
+    return error;
+  }
+
+  public LibraryVersion getLibraryVersion() {
+    return libraryVersion;
+  }
+
+  /**
+   * @return the library XML, null if it could not be located.
+   */
+  public File getXmlFile() {
+    return xmlFile;
+  }
+
+  public boolean isValid() {
+    return error == null;
+  }
+
+  @Override
+  public String toString() {
+    return isValid() ? String.format("%s: valid", libraryVersion) : String.format("%s: invalid (%s)", libraryVersion, error.getMessage());
+  }
+}
@@ -3,31 +3,20 @@ package lu.hitec.pssu.melm.utils;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.List;
 
 import javax.annotation.Nonnull;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import javax.xml.validation.ValidatorHandler;
 
 import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
 
 public final class LibraryValidator {
 
@@ -35,6 +24,11 @@ public final class LibraryValidator {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(LibraryValidator.class);
 
+  /** Number of hierarchy violations quoted in the message of the exception, all of them being counted. */
+  private static final int MAX_REPORTED_VIOLATIONS = 20;
+
+  private static volatile ValidationMetrics metrics = ValidationMetrics.NONE;
+
   private LibraryValidator() {
   }
 
@@ -60,6 +54,60 @@ public final class LibraryValidator {
     return null;
   }
 
+  /**
+   * Reads only the description header of a library and checks its name, version and library type, without validating the rest of the
+   * document. Meant as a fast rejection of mismatching uploads, the full validation being still required to accept them.
+   *
+   * @param expectedLibraryType library type the header must declare, such as <code>points</code>, null to accept any type.
+   */
+  public static LibraryDescription checkLibraryHeader(@Nonnull final String baseDirectory, @Nonnull final String libraryName,
+      @Nonnull final String version, final String expectedLibraryType) throws LibraryValidatorException {
+    final File xmlFile = findLibraryXml(baseDirectory, libraryName, version);
+    final LibraryDescription description = checkHeader(xmlFile, libraryName, version, expectedLibraryType);
+    if (description == null) {
+      throw new LibraryValidatorException(String.format("No library header could be read from %s", xmlFile.getName()));
+    }
+    return description;
+  }
+
+  public static ValidationMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Installs the metrics receiving the measurements of every validation, {@link ValidationMetrics#NONE} to disable them.
+   */
+  public static void setMetrics(@Nonnull final ValidationMetrics validationMetrics) {
+    assert validationMetrics != null : "Metrics are null";
+    metrics = validationMetrics;
+  }
+
+  /**
+   * Checks every icon referenced by the library XML, and the <code>_selected</code> variants of bare icon names, against the files of
+   * the folder holding it. All missing and orphaned files are reported at once.
+   */
+  public static IconCheckReport verifyIcons(@Nonnull final File xmlFile) throws LibraryValidatorException {
+    assert xmlFile != null : "Xml file is null";
+    final IconReferenceHandler icons = new IconReferenceHandler();
+    try {
+      XmlParsers.getXMLReader(icons).parse(toInputSource(xmlFile));
+    } catch (final ParserConfigurationException | SAXException | IOException e) {
+      throw new LibraryValidatorException(String.format("Error in reading %s: %s", xmlFile.getName(), e.getMessage()), e);
+    }
+    return checkIcons(xmlFile, icons);
+  }
+
+  /**
+   * Validates a library against the bundled {@link #XSD_PATH} schema.
+   */
+  public static File validateLibrary(@Nonnull final String baseDirectory, @Nonnull final String libraryName, @Nonnull final String version)
+      throws LibraryValidatorException {
+    return validateLibrary(XSD_PATH, baseDirectory, libraryName, version);
+  }
+
+  /**
+   * Validates the XML of an unzipped library folder, the icons it references being checked against the files of that folder.
+   */
   public static File validateLibrary(@Nonnull final String xsdPath, @Nonnull final File xmlFile, @Nonnull final String libraryName,
       @Nonnull final String version) throws LibraryValidatorException {
     assert xsdPath != null : "XSD path is null";
@@ -67,23 +115,171 @@ public final class LibraryValidator {
     assert libraryName != null : "Library name is null";
     assert version != null : "Version is null";
 
-    try {
-      final File xsd = new File(xsdPath);
-      validateXMLwithXSD(xmlFile, xsd);
-      validateNameAndVersion(xmlFile, libraryName, version);
-      return xmlFile;
-    } catch (final Exception e) {
-      throw new LibraryValidatorException(e.getMessage(), e);
-    }
+    validateLibraryXml(SchemaRegistry.getSchema(xsdPath), xmlFile, new LibraryVersion(libraryName, version));
+    return xmlFile;
   }
 
   public static File validateLibrary(@Nonnull final String xsdPath, @Nonnull final String baseDirectory, @Nonnull final String libraryName,
       @Nonnull final String version) throws LibraryValidatorException {
+    return validateLibrary(xsdPath, baseDirectory, libraryName, version, null);
+  }
+
+  /**
+   * Validates a library, reusing the verdict of the cache when neither the library folder nor the schema changed since it was
+   * computed.
+   */
+  public static File validateLibrary(@Nonnull final String xsdPath, @Nonnull final String baseDirectory, @Nonnull final String libraryName,
+      @Nonnull final String version, final ValidationCache cache) throws LibraryValidatorException {
     assert xsdPath != null : "XSD path is null";
     assert baseDirectory != null : "Base directory is null";
     assert libraryName != null : "Library name is null";
     assert version != null : "Version is null";
 
+    final File xmlFile = findLibraryXml(baseDirectory, libraryName, version);
+    validateLibraryXml(SchemaRegistry.getSchema(xsdPath), xmlFile, new LibraryVersion(libraryName, version), cache);
+    return xmlFile;
+  }
+
+  /**
+   * Validates a library and collects its hierarchy in the same pass, ready to be queried or persisted as a {@link LibrarySnapshot}.
+   */
+  public static LibraryTree validateLibraryTree(@Nonnull final String xsdPath, @Nonnull final String baseDirectory,
+      @Nonnull final String libraryName, @Nonnull final String version) throws LibraryValidatorException {
+    assert xsdPath != null : "XSD path is null";
+    assert baseDirectory != null : "Base directory is null";
+    assert libraryName != null : "Library name is null";
+    assert version != null : "Version is null";
+
+    final File xmlFile = findLibraryXml(baseDirectory, libraryName, version);
+    final LibraryTreeHandler treeHandler = new LibraryTreeHandler();
+    final LibraryDescription description = validateLibraryXml(SchemaRegistry.getSchema(xsdPath), xmlFile, new LibraryVersion(
+        libraryName, version), treeHandler);
+    return treeHandler.build(description);
+  }
+
+  /**
+   * Validates two versions of a library and compares their hierarchies, keyed by unique-code, and the files of their unzipped
+   * folders.
+   */
+  public static LibraryDiff diffLibraries(@Nonnull final String xsdPath, @Nonnull final String baseDirectory,
+      @Nonnull final String libraryName, @Nonnull final String fromVersion, @Nonnull final String toVersion)
+      throws LibraryValidatorException {
+    assert fromVersion != null : "From version is null";
+    assert toVersion != null : "To version is null";
+    final LibraryTree from = validateLibraryTree(xsdPath, baseDirectory, libraryName, fromVersion);
+    final LibraryTree to = validateLibraryTree(xsdPath, baseDirectory, libraryName, toVersion);
+    try {
+      return LibraryDiff.compare(from, getUnzippedDirectoryForLibraryVersion(baseDirectory, libraryName, fromVersion), to,
+          getUnzippedDirectoryForLibraryVersion(baseDirectory, libraryName, toVersion));
+    } catch (final IOException e) {
+      metrics.recordFailure(ValidationFailure.IO_ERROR);
+      throw new LibraryValidatorException(String.format("Error in comparing %s-%s and %s-%s: %s", libraryName, fromVersion,
+          libraryName, toVersion, e.getMessage()), e);
+    }
+  }
+
+  /**
+   * Validates a library and indexes its hierarchy for lookups by unique-code, hierarchy-code prefix, icon file and extension id.
+   */
+  public static LibraryIndex validateLibraryIndex(@Nonnull final String xsdPath, @Nonnull final String baseDirectory,
+      @Nonnull final String libraryName, @Nonnull final String version) throws LibraryValidatorException {
+    return new LibraryIndex(validateLibraryTree(xsdPath, baseDirectory, libraryName, version));
+  }
+
+  /**
+   * Validates a library, then packs the icons it references into one {@link IconAtlas} per size variant, written to the
+   * {@link IconAtlas#FOLDER} of the library version directory.
+   */
+  public static List<IconAtlas> validateLibraryWithAtlas(@Nonnull final String xsdPath, @Nonnull final String baseDirectory,
+      @Nonnull final String libraryName, @Nonnull final String version) throws LibraryValidatorException {
+    assert xsdPath != null : "XSD path is null";
+    assert baseDirectory != null : "Base directory is null";
+    assert libraryName != null : "Library name is null";
+    assert version != null : "Version is null";
+
+    final File xmlFile = findLibraryXml(baseDirectory, libraryName, version);
+    final IconReferenceHandler icons = new IconReferenceHandler();
+    validateLibraryXml(SchemaRegistry.getSchema(xsdPath), xmlFile, new LibraryVersion(libraryName, version), icons);
+    return IconAtlas.generate(xmlFile, icons, new File(buildDirectoryForLibraryVersion(baseDirectory, libraryName, version),
+        IconAtlas.FOLDER));
+  }
+
+  /**
+   * Validates a library and writes the binary snapshot of its hierarchy, so that consumers can load it without parsing the XML. The
+   * snapshot records the content hash of the XML, checked by {@link LibrarySnapshot#open(File, File)}.
+   */
+  public static File validateLibraryWithSnapshot(@Nonnull final String xsdPath, @Nonnull final String baseDirectory,
+      @Nonnull final String libraryName, @Nonnull final String version, @Nonnull final File snapshotFile)
+      throws LibraryValidatorException {
+    assert snapshotFile != null : "Snapshot file is null";
+    final File xmlFile = findLibraryXml(baseDirectory, libraryName, version);
+    // hashed before parsing: an XML replaced in between leaves a snapshot that no longer matches it, rather than a wrong one
+    final String sourceHash;
+    try {
+      sourceHash = ContentHash.hash(xmlFile);
+    } catch (final IOException e) {
+      metrics.recordFailure(ValidationFailure.IO_ERROR);
+      throw new LibraryValidatorException(String.format("Error in hashing library %s-%s: %s", libraryName, version, e.getMessage()), e);
+    }
+    LibrarySnapshot.write(validateLibraryTree(xsdPath, baseDirectory, libraryName, version), sourceHash, snapshotFile);
+    return xmlFile;
+  }
+
+  static File buildDirectoryForLibrary(@Nonnull final String baseDirectory, @Nonnull final String libraryName) {
+    assert baseDirectory != null : "Base directory is null";
+    assert libraryName != null : "Library name is null";
+    return new File(baseDirectory, libraryName);
+  }
+
+  /**
+   * Streams the description header of a library XML, without validation, and aborts the parse once it is read.
+   *
+   * @return the header, null when the document ends or is malformed before the header is complete: the full validation reports it.
+   * @throws LibraryValidatorException when the library name, version or type does not match.
+   */
+  static LibraryDescription checkHeader(@Nonnull final File xmlFile, @Nonnull final String libraryName, @Nonnull final String version,
+      final String expectedLibraryType) throws LibraryValidatorException {
+    assert xmlFile != null : "Xml file is null";
+    assert libraryName != null : "Library name is null";
+    assert version != null : "Version is null";
+    final long start = System.nanoTime();
+    final DescriptionHandler handler = new DescriptionHandler(libraryName, version, true, expectedLibraryType);
+    try {
+      XmlParsers.getXMLReader(handler).parse(toInputSource(xmlFile));
+      return null;
+    } catch (final DescriptionHandler.HeaderReadException e) {
+      return handler.getDescription();
+    } catch (final ParserConfigurationException | SAXException | IOException e) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(String.format("Header of %s not read: %s", xmlFile.getName(), e.getMessage()));
+      }
+      return null;
+    } catch (final DescriptionHandler.DescriptionMismatchException e) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(String.format("Header of %s rejected: %s", xmlFile.getName(), e.getMessage()));
+      }
+      metrics.recordFailure(e.getFailure());
+      throw new LibraryValidatorException(e.getMessage(), e);
+    } finally {
+      metrics.recordPhase(ValidationPhase.HEADER_CHECK, System.nanoTime() - start);
+    }
+  }
+
+  static String extractLibraryTypePathFromXML(@Nonnull final File xmlFile) throws ParserConfigurationException, SAXException,
+      IOException {
+    assert xmlFile != null : "Xml file is null";
+    final DescriptionHandler handler = new DescriptionHandler();
+    XmlParsers.getXMLReader(handler).parse(toInputSource(xmlFile));
+    final String result = handler.getDescription().getLibraryType();
+    return result == null ? "" : result;
+  }
+
+  static File findLibraryXml(@Nonnull final String baseDirectory, @Nonnull final String libraryName, @Nonnull final String version)
+      throws LibraryValidatorException {
+    assert baseDirectory != null : "Base directory is null";
+    assert libraryName != null : "Library name is null";
+    assert version != null : "Version is null";
+
     class OnlyExt implements FilenameFilter {
       String ext;
 
@@ -100,12 +296,14 @@ public final class LibraryValidator {
       }
     }
 
+    final long start = System.nanoTime();
     final File unzippedFolder = getUnzippedDirectoryForLibraryVersion(baseDirectory, libraryName, version);
     if (!unzippedFolder.isDirectory()) {
       final String msg = "Unzipped Folder does not exist / is not a directory";
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug(msg);
       }
+      metrics.recordFailure(ValidationFailure.LIBRARY_NOT_FOUND);
       throw new LibraryValidatorException(msg);
     }
 
@@ -115,36 +313,12 @@ public final class LibraryValidator {
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug(msg);
       }
+      metrics.recordFailure(ValidationFailure.LIBRARY_NOT_FOUND);
       throw new LibraryValidatorException(msg);
     }
 
-    final File xmlFile = new File(unzippedFolder, children[0]);
-    try {
-      final File xsd = new File(xsdPath);
-      validateXMLwithXSD(xmlFile, xsd);
-      validateNameAndVersion(xmlFile, libraryName, version);
-      return xmlFile;
-    } catch (final Exception e) {
-      throw new LibraryValidatorException(e.getMessage(), e);
-    }
-  }
-
-  static File buildDirectoryForLibrary(@Nonnull final String baseDirectory, @Nonnull final String libraryName) {
-    assert baseDirectory != null : "Base directory is null";
-    assert libraryName != null : "Library name is null";
-    return new File(baseDirectory, libraryName);
-  }
-
-  static String extractLibraryTypePathFromXML(final File xmlFile) throws ParserConfigurationException, SAXException, IOException,
-      XPathExpressionException {
-    final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-    final DocumentBuilder builder = factory.newDocumentBuilder();
-    final Document doc = builder.parse(xmlFile);
-    final XPathFactory xPathfactory = XPathFactory.newInstance();
-    final XPath xpath = xPathfactory.newXPath();
-    final XPathExpression expr = xpath.compile("/elements/description/library-type");
-    final String result = (String) expr.evaluate(doc, XPathConstants.STRING);
-    return result;
+    metrics.recordPhase(ValidationPhase.LIBRARY_LOOKUP, System.nanoTime() - start);
+    return new File(unzippedFolder, children[0]);
   }
 
   static File getUnzippedDirectoryForLibraryVersion(@Nonnull final String baseDirectory, @Nonnull final String libraryName,
@@ -156,69 +330,254 @@ public final class LibraryValidator {
     return new File(libraryRoot, libraryName + "-" + version);
   }
 
+  /**
+   * @return the unzipped folder of a library version, without creating any of its parent folders.
+   */
+  static File resolveUnzippedDirectoryForLibraryVersion(@Nonnull final String baseDirectory, @Nonnull final String libraryName,
+      @Nonnull final String version) {
+    assert baseDirectory != null : "Base directory is null";
+    assert libraryName != null : "Library name is null";
+    assert version != null : "Version is null";
+    return new File(new File(buildDirectoryForLibrary(baseDirectory, libraryName), version), libraryName + "-" + version);
+  }
+
+  /**
+   * Validates the XML of an unzipped library folder, going through the cache when one is given.
+   */
+  static LibraryDescription validateLibraryXml(@Nonnull final CompiledSchema schema, @Nonnull final File xmlFile,
+      @Nonnull final LibraryVersion libraryVersion, final ValidationCache cache) throws LibraryValidatorException {
+    assert schema != null : "Schema is null";
+    assert xmlFile != null : "Xml file is null";
+    assert libraryVersion != null : "Library version is null";
+    if (cache == null) {
+      return validateLibraryXml(schema, xmlFile, libraryVersion);
+    }
+
+    // a mismatching header is rejected before hashing every file of the library
+    checkHeader(xmlFile, libraryVersion.getLibraryName(), libraryVersion.getVersion(), null);
+    final long start = System.nanoTime();
+    final byte[] key;
+    try {
+      key = ValidationCache.computeKey(schema, xmlFile.getParentFile());
+    } catch (final IOException e) {
+      metrics.recordFailure(ValidationFailure.IO_ERROR);
+      throw new LibraryValidatorException(String.format("Error in hashing library %s: %s", libraryVersion, e.getMessage()), e);
+    }
+    final ValidationCache.Verdict cached = cache.get(libraryVersion, key);
+    metrics.recordPhase(ValidationPhase.CACHE_LOOKUP, System.nanoTime() - start);
+    if (cached != null) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(String.format("Cached verdict for %s, valid : %b", libraryVersion, cached.isValid()));
+      }
+      if (cached.isValid()) {
+        return cached.getDescription();
+      }
+      metrics.recordFailure(ValidationFailure.CACHED_FAILURE);
+      throw new LibraryValidatorException(cached.getMessage());
+    }
+
+    try {
+      final LibraryDescription description = validateCheckedLibraryXml(schema, xmlFile, libraryVersion);
+      putVerdict(cache, libraryVersion, ValidationCache.Verdict.valid(key, description));
+      return description;
+    } catch (final LibraryValidatorException e) {
+      // a failure to read the files says nothing about the library, it is not remembered
+      if (!isReadFailure(e)) {
+        putVerdict(cache, libraryVersion, ValidationCache.Verdict.invalid(key, String.valueOf(e.getMessage())));
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * @return true when the exception was caused by an I/O error rather than by the content of the library.
+   */
+  static boolean isReadFailure(@Nonnull final Throwable throwable) {
+    for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+      if (cause instanceof IOException || cause instanceof SAXException && ((SAXException) cause).getException() instanceof IOException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Validates one library version of a base directory, reporting the outcome instead of throwing, including for runtime exceptions.
+   */
+  static LibraryValidationResult validateLibraryVersion(@Nonnull final CompiledSchema schema, @Nonnull final String baseDirectory,
+      @Nonnull final LibraryVersion libraryVersion, final ValidationCache cache) {
+    assert schema != null : "Schema is null";
+    assert baseDirectory != null : "Base directory is null";
+    assert libraryVersion != null : "Library version is null";
+    final long start = System.nanoTime();
+    File xmlFile = null;
+    try {
+      xmlFile = findLibraryXml(baseDirectory, libraryVersion.getLibraryName(), libraryVersion.getVersion());
+      final LibraryDescription description = validateLibraryXml(schema, xmlFile, libraryVersion, cache);
+      return LibraryValidationResult.success(libraryVersion, xmlFile, description, System.nanoTime() - start);
+    } catch (final LibraryValidatorException e) {
+      return LibraryValidationResult.failure(libraryVersion, xmlFile, e, System.nanoTime() - start);
+    } catch (final RuntimeException e) {
+      // an unexpected error fails this version only, not the whole repository or the worker validating it
+      LOGGER.warn(String.format("Unexpected error in validating library %s", libraryVersion), e);
+      return LibraryValidationResult.failure(libraryVersion, xmlFile,
+          new LibraryValidatorException(String.format("Unexpected error in validating library %s: %s", libraryVersion, e), e),
+          System.nanoTime() - start);
+    }
+  }
+
   static void validateNameAndVersion(@Nonnull final File xmlFile, @Nonnull final String libraryName, @Nonnull final String version)
       throws Exception {
     assert xmlFile != null : "Xml file is null";
     assert libraryName != null : "Library name is null";
     assert version != null : "Version is null";
-    final SAXParserFactory factory = SAXParserFactory.newInstance();
-    final SAXParser saxParser = factory.newSAXParser();
+    XmlParsers.getXMLReader(new DescriptionHandler(libraryName, version)).parse(toInputSource(xmlFile));
+  }
 
-    final DefaultHandler handler = new DefaultHandler() {
-      String currentlyProcessedNode = "";
+  /**
+   * Validates the XML against the schema and checks its library name and version in one streaming pass, the description header being
+   * collected along the way. The consistency of the hierarchy is checked in the same pass. Additional handlers receive the validated
+   * events of the same pass.
+   */
+  static LibraryDescription validateInSinglePass(@Nonnull final File xmlFile, @Nonnull final CompiledSchema schema,
+      @Nonnull final String libraryName, @Nonnull final String version, @Nonnull final ContentHandler... additionalHandlers)
+      throws LibraryValidatorException {
+    assert xmlFile != null : "XML file is null";
+    metrics.recordBytesRead(xmlFile.length());
+    return validateInSinglePass(toInputSource(xmlFile), schema, libraryName, version, additionalHandlers);
+  }
 
-      @Override
-      public void characters(final char ch[], final int start, final int length) throws SAXException {
-        if ("library-version".equals(currentlyProcessedNode)) {
-          final String libraryVersionInXML = new String(ch, start, length);
-          if (!version.endsWith(libraryVersionInXML)) {
-            throw new RuntimeException("Incorrect Library version in xml");
-          }
-        } else if ("library-name".equals(currentlyProcessedNode)) {
-          final String libraryNameInXML = new String(ch, start, length);
-          if (!libraryName.endsWith(libraryNameInXML)) {
-            throw new RuntimeException("Incorrect Library name in xml");
-          }
-        }
+  static LibraryDescription validateInSinglePass(@Nonnull final InputSource source, @Nonnull final CompiledSchema schema,
+      @Nonnull final String libraryName, @Nonnull final String version, @Nonnull final ContentHandler... additionalHandlers)
+      throws LibraryValidatorException {
+    assert source != null : "Source is null";
+    assert schema != null : "Schema is null";
+    assert libraryName != null : "Library name is null";
+    assert version != null : "Version is null";
+    assert additionalHandlers != null : "Additional handlers are null";
+    final DescriptionHandler descriptionHandler = new DescriptionHandler(libraryName, version);
+    final IntegrityHandler integrity = new IntegrityHandler();
+    final ContentHandler[] handlers = new ContentHandler[additionalHandlers.length + 2];
+    handlers[0] = descriptionHandler;
+    handlers[1] = integrity;
+    System.arraycopy(additionalHandlers, 0, handlers, 2, additionalHandlers.length);
+    final ValidatorHandler validatorHandler = schema.getValidatorHandler();
+    validatorHandler.setContentHandler(new TeeContentHandler(handlers));
+    final long start = System.nanoTime();
+    try {
+      XmlParsers.getXMLReader(validatorHandler).parse(source);
+    } catch (final ParserConfigurationException | SAXException | IOException e) {
+      final String msg = String.format("Error in validateXML %s", e.getMessage());
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(msg, e);
       }
+      metrics.recordFailure(e instanceof IOException ? ValidationFailure.IO_ERROR : ValidationFailure.INVALID_XML);
+      throw new LibraryValidatorException(msg, e);
+    } finally {
+      validatorHandler.setContentHandler(null);
+      metrics.recordPhase(ValidationPhase.SINGLE_PASS, System.nanoTime() - start);
+      metrics.recordNodes(descriptionHandler.getNodeCount());
+    }
 
-      @Override
-      public void endElement(final String uri, final String localName, final String qName) throws SAXException {
-        currentlyProcessedNode = "";
+    final List<String> violations = integrity.getViolations();
+    if (!violations.isEmpty()) {
+      final String msg = String.format("Library hierarchy is inconsistent (%d violations): %s", violations.size(),
+          violations.size() > MAX_REPORTED_VIOLATIONS ? violations.subList(0, MAX_REPORTED_VIOLATIONS) + " ..." : violations);
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(msg);
       }
+      metrics.recordFailure(ValidationFailure.INCONSISTENT_HIERARCHY);
+      throw new LibraryValidatorException(msg);
+    }
+    return descriptionHandler.getDescription();
+  }
 
-      @Override
-      public void startElement(final String uri, final String localName, final String qName, final Attributes attributes)
-          throws SAXException {
-        currentlyProcessedNode = qName;
+  static void validateXMLwithXSD(@Nonnull final File xmlFile, @Nonnull final CompiledSchema schema) throws LibraryValidatorException {
+    assert xmlFile != null : "XML file is null";
+    assert schema != null : "Schema is null";
+    try {
+      schema.getValidator().validate(new StreamSource(xmlFile));
+    } catch (final Exception e) {
+      final String msg = String.format("Error in validateXML %s", e.getMessage());
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(msg, e);
       }
-    };
-
-    saxParser.parse(xmlFile, handler);
+      throw new LibraryValidatorException(msg, e);
+    }
   }
 
   static void validateXMLwithXSD(@Nonnull final File xmlFile, @Nonnull final File schemaFile) throws LibraryValidatorException {
     assert xmlFile != null : "XML file is null";
     assert schemaFile != null : "Schema file is null";
-    final String schemaLang = "http://www.w3.org/2001/XMLSchema";
+    validateXMLwithXSD(xmlFile, SchemaRegistry.getSchema(schemaFile));
+  }
 
-    // get validation driver:
-    final SchemaFactory factory = SchemaFactory.newInstance(schemaLang);
+  private static void putVerdict(@Nonnull final ValidationCache cache, @Nonnull final LibraryVersion libraryVersion,
+      @Nonnull final ValidationCache.Verdict verdict) {
+    try {
+      cache.put(libraryVersion, verdict);
+    } catch (final IOException e) {
+      LOGGER.warn(String.format("Failed to cache the verdict for %s", libraryVersion), e);
+    }
+  }
 
-    // create schema by reading it from an XSD file
+  private static IconCheckReport checkIcons(@Nonnull final File xmlFile, @Nonnull final IconReferenceHandler icons)
+      throws LibraryValidatorException {
+    final long start = System.nanoTime();
     try {
-      final Schema schema = factory.newSchema(schemaFile);
-      final Validator validator = schema.newValidator();
+      return IconIndex.scan(xmlFile.getParentFile()).check(icons.getLibraryIcon(), icons.getIconFiles());
+    } catch (final IOException e) {
+      metrics.recordFailure(ValidationFailure.IO_ERROR);
+      throw new LibraryValidatorException(String.format("Error in indexing icons of %s: %s", xmlFile.getParent(), e.getMessage()), e);
+    } finally {
+      metrics.recordPhase(ValidationPhase.ICON_CHECK, System.nanoTime() - start);
+    }
+  }
 
-      // at last perform validation:
-      validator.validate(new StreamSource(xmlFile));
-    } catch (final Exception e) {
-      final String msg = String.format("Error in validateXML %s", e.getMessage());
+  private static LibraryDescription validateLibraryXml(@Nonnull final CompiledSchema schema, @Nonnull final File xmlFile,
+      @Nonnull final LibraryVersion libraryVersion, @Nonnull final ContentHandler... additionalHandlers)
+      throws LibraryValidatorException {
+    // a mismatching header is rejected before paying for the validation of the whole document
+    checkHeader(xmlFile, libraryVersion.getLibraryName(), libraryVersion.getVersion(), null);
+    return validateCheckedLibraryXml(schema, xmlFile, libraryVersion, additionalHandlers);
+  }
+
+  /**
+   * Validates a library XML whose header has already been checked.
+   */
+  private static LibraryDescription validateCheckedLibraryXml(@Nonnull final CompiledSchema schema, @Nonnull final File xmlFile,
+      @Nonnull final LibraryVersion libraryVersion, @Nonnull final ContentHandler... additionalHandlers)
+      throws LibraryValidatorException {
+    final IconReferenceHandler icons = new IconReferenceHandler();
+    final ContentHandler[] handlers = new ContentHandler[additionalHandlers.length + 1];
+    handlers[0] = icons;
+    System.arraycopy(additionalHandlers, 0, handlers, 1, additionalHandlers.length);
+    final LibraryDescription description;
+    try {
+      description = validateInSinglePass(xmlFile, schema, libraryVersion.getLibraryName(), libraryVersion.getVersion(), handlers);
+    } catch (final DescriptionHandler.DescriptionMismatchException e) {
+      // the description handler rejects a library name or version that does not match
+      metrics.recordFailure(e.getFailure());
+      throw new LibraryValidatorException(e.getMessage(), e);
+    }
+
+    final IconCheckReport report = checkIcons(xmlFile, icons);
+    if (!report.isComplete()) {
+      final String msg = String.format("Icons referenced in xml are missing: %s", report.getMissing());
       if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug(msg, e);
+        LOGGER.debug(msg);
       }
-      throw new LibraryValidatorException(msg, e);
+      metrics.recordFailure(ValidationFailure.MISSING_ICONS);
+      throw new LibraryValidatorException(msg);
+    }
+    if (LOGGER.isDebugEnabled() && !report.getOrphaned().isEmpty()) {
+      LOGGER.debug(String.format("Files not referenced in xml : %s", report.getOrphaned()));
     }
+    return description;
+  }
+
+  private static InputSource toInputSource(@Nonnull final File xmlFile) {
+    return new InputSource(xmlFile.toURI().toString());
   }
 
 }
@@ -0,0 +1,56 @@
+package lu.hitec.pssu.melm.utils;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Identifies one version of a library, as laid out under a base directory as <code>&lt;library&gt;/&lt;version&gt;</code>.
+ */
+public final class LibraryVersion implements Comparable<LibraryVersion> {
+
+  private final String libraryName;
+
+  private final String version;
+
+  public LibraryVersion(@Nonnull final String libraryName, @Nonnull final String version) {
+    assert libraryName != null : "Library name is null";
+    assert version != null : "Version is null";
+    this.libraryName = libraryName;
+    this.version = version;
+  }
+
+  @Override
+  public int compareTo(@Nonnull final LibraryVersion other) {
+    final int byName = libraryName.compareTo(other.libraryName);
+    return byName != 0 ? byName : version.compareTo(other.version);
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof LibraryVersion)) {
+      return false;
+    }
+    final LibraryVersion other = (LibraryVersion) obj;
+    return libraryName.equals(other.libraryName) && version.equals(other.version);
+  }
+
+  public String getLibraryName() {
+    return libraryName;
+  }
+
+  public String getVersion() {
+    return version;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * libraryName.hashCode() + version.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return libraryName + "-" + version;
+  }
+}
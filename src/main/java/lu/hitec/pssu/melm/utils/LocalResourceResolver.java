@@ -0,0 +1,191 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.annotation.Nonnull;
+
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Resolves the library schema, whether referenced by namespace or by an <code>xsi:schemaLocation</code> hint, to the copy bundled on
+ * the classpath and refuses every other external entity, so that reading a library never goes to the network or to arbitrary files.
+ */
+final class LocalResourceResolver implements EntityResolver, LSResourceResolver {
+
+  static final LocalResourceResolver INSTANCE = new LocalResourceResolver();
+
+  static final String NAMESPACE = "http://hitec.lu/pss/xsd/mapelement/hierarchy";
+
+  private static final String XSD_NAME = LibraryValidator.XSD_PATH.substring(LibraryValidator.XSD_PATH.lastIndexOf('/') + 1);
+
+  private volatile byte[] bundledSchema;
+
+  private LocalResourceResolver() {
+  }
+
+  private static boolean isBundledSchema(final String namespaceURI, final String systemId) {
+    return NAMESPACE.equals(namespaceURI) || systemId != null && (systemId.equals(XSD_NAME) || systemId.endsWith("/" + XSD_NAME));
+  }
+
+  /**
+   * Serves the bundled schema to a parser. Any other external entity is refused.
+   */
+  @Override
+  public InputSource resolveEntity(final String publicId, final String systemId) throws SAXException, IOException {
+    if (isBundledSchema(null, systemId)) {
+      final InputSource source = new InputSource(new ByteArrayInputStream(getBundledSchema()));
+      source.setSystemId(systemId);
+      return source;
+    }
+    throw new SAXException(String.format("External entity %s is not allowed", systemId));
+  }
+
+  /**
+   * Serves the bundled schema to a schema factory or a validator. Other resources are left to the default resolution, which the
+   * <code>ACCESS_EXTERNAL_*</code> properties of the callers restrict.
+   */
+  @Override
+  public LSInput resolveResource(final String type, final String namespaceURI, final String publicId, final String systemId,
+      final String baseURI) {
+    if (!isBundledSchema(namespaceURI, systemId)) {
+      return null;
+    }
+    try {
+      return new BundledInput(getBundledSchema(), publicId, systemId, baseURI);
+    } catch (final IOException e) {
+      return null;
+    }
+  }
+
+  private byte[] getBundledSchema() throws IOException {
+    byte[] content = bundledSchema;
+    if (content == null) {
+      try (InputStream in = LocalResourceResolver.class.getResourceAsStream(LibraryValidator.XSD_PATH)) {
+        if (in == null) {
+          throw new IOException(String.format("Bundled schema %s not found on the classpath", LibraryValidator.XSD_PATH));
+        }
+        content = SchemaRegistry.readFully(in);
+      }
+      bundledSchema = content;
+    }
+    return content;
+  }
+
+  /**
+   * The bundled schema as an {@link LSInput}, backed by a fresh stream on each call unless the caller sets another source.
+   */
+  private static final class BundledInput implements LSInput {
+
+    private String baseURI;
+
+    private InputStream byteStream;
+
+    private boolean certifiedText;
+
+    private Reader characterStream;
+
+    private final byte[] content;
+
+    private String encoding;
+
+    private String publicId;
+
+    private String stringData;
+
+    private String systemId;
+
+    BundledInput(@Nonnull final byte[] content, final String publicId, final String systemId, final String baseURI) {
+      this.content = content;
+      this.publicId = publicId;
+      this.systemId = systemId;
+      this.baseURI = baseURI;
+    }
+
+    @Override
+    public String getBaseURI() {
+      return baseURI;
+    }
+
+    @Override
+    public InputStream getByteStream() {
+      return byteStream == null ? new ByteArrayInputStream(content) : byteStream;
+    }
+
+    @Override
+    public boolean getCertifiedText() {
+      return certifiedText;
+    }
+
+    @Override
+    public Reader getCharacterStream() {
+      return characterStream;
+    }
+
+    @Override
+    public String getEncoding() {
+      return encoding;
+    }
+
+    @Override
+    public String getPublicId() {
+      return publicId;
+    }
+
+    @Override
+    public String getStringData() {
+      return stringData;
+    }
+
+    @Override
+    public String getSystemId() {
+      return systemId;
+    }
+
+    @Override
+    public void setBaseURI(final String baseURI) {
+      this.baseURI = baseURI;
+    }
+
+    @Override
+    public void setByteStream(final InputStream byteStream) {
+      this.byteStream = byteStream;
+    }
+
+    @Override
+    public void setCertifiedText(final boolean certifiedText) {
+      this.certifiedText = certifiedText;
+    }
+
+    @Override
+    public void setCharacterStream(final Reader characterStream) {
+      this.characterStream = characterStream;
+    }
+
+    @Override
+    public void setEncoding(final String encoding) {
+      this.encoding = encoding;
+    }
+
+    @Override
+    public void setPublicId(final String publicId) {
+      this.publicId = publicId;
+    }
+
+    @Override
+    public void setStringData(final String stringData) {
+      this.stringData = stringData;
+    }
+
+    @Override
+    public void setSystemId(final String systemId) {
+      this.systemId = systemId;
+    }
+  }
+}
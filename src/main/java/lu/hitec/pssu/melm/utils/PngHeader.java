@@ -0,0 +1,94 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Header of a PNG image, read from its signature and <code>IHDR</code> chunk without decoding the image data.
+ */
+final class PngHeader {
+
+  private static final int IHDR = 0x49484452;
+
+  private static final int IHDR_LENGTH = 13;
+
+  private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+  private final int bitDepth;
+
+  private final int colorType;
+
+  private final int height;
+
+  private final int width;
+
+  private PngHeader(final int width, final int height, final int bitDepth, final int colorType) {
+    this.width = width;
+    this.height = height;
+    this.bitDepth = bitDepth;
+    this.colorType = colorType;
+  }
+
+  static PngHeader read(@Nonnull final File file) throws IOException {
+    assert file != null : "File is null";
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file), 64)) {
+      return read(in);
+    }
+  }
+
+  /**
+   * Reads the first 33 bytes of the stream, checking the signature and the CRC of the header chunk.
+   */
+  static PngHeader read(@Nonnull final InputStream stream) throws IOException {
+    assert stream != null : "Stream is null";
+    final DataInputStream in = new DataInputStream(stream);
+    final byte[] signature = new byte[SIGNATURE.length];
+    in.readFully(signature);
+    if (!Arrays.equals(SIGNATURE, signature)) {
+      throw new IOException("PNG signature is missing");
+    }
+    final int length = in.readInt();
+    final byte[] chunk = new byte[4 + IHDR_LENGTH];
+    in.readFully(chunk);
+    final DataInputStream data = new DataInputStream(new ByteArrayInputStream(chunk));
+    if (length != IHDR_LENGTH || data.readInt() != IHDR) {
+      throw new IOException("IHDR chunk is not the first one");
+    }
+    final CRC32 crc = new CRC32();
+    crc.update(chunk);
+    if ((int) crc.getValue() != in.readInt()) {
+      throw new IOException("IHDR chunk is corrupted");
+    }
+    final int width = data.readInt();
+    final int height = data.readInt();
+    if (width <= 0 || height <= 0) {
+      throw new IOException(String.format("Invalid dimensions %dx%d", width, height));
+    }
+    return new PngHeader(width, height, data.readUnsignedByte(), data.readUnsignedByte());
+  }
+
+  int getBitDepth() {
+    return bitDepth;
+  }
+
+  int getColorType() {
+    return colorType;
+  }
+
+  int getHeight() {
+    return height;
+  }
+
+  int getWidth() {
+    return width;
+  }
+}
@@ -0,0 +1,159 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.annotation.Nonnull;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thread-safe registry compiling every XSD only once. File based schemas are keyed by their canonical path and recompiled when their
+ * modification time or size changes, the bundled {@link LibraryValidator#XSD_PATH} schema is loaded from the classpath.
+ */
+public final class SchemaRegistry {
+
+  private static final String BUNDLED_KEY = "classpath:" + LibraryValidator.XSD_PATH;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SchemaRegistry.class);
+
+  private static final ConcurrentMap<String, FutureTask<CompiledSchema>> SCHEMAS = new ConcurrentHashMap<>();
+
+  private SchemaRegistry() {
+  }
+
+  public static CompiledSchema getBundledSchema() throws LibraryValidatorException {
+    final URL url = SchemaRegistry.class.getResource(LibraryValidator.XSD_PATH);
+    if (url == null) {
+      throw new LibraryValidatorException(String.format("Bundled schema %s not found on the classpath", LibraryValidator.XSD_PATH));
+    }
+    return getOrCompile(BUNDLED_KEY, BUNDLED_KEY, new Callable<CompiledSchema>() {
+      @Override
+      public CompiledSchema call() throws Exception {
+        try (InputStream in = url.openStream()) {
+          return compile(readFully(in), url.toExternalForm(), BUNDLED_KEY);
+        }
+      }
+    });
+  }
+
+  public static CompiledSchema getSchema(@Nonnull final File schemaFile) throws LibraryValidatorException {
+    assert schemaFile != null : "Schema file is null";
+    if (!schemaFile.isFile()) {
+      throw new LibraryValidatorException(String.format("Schema file %s does not exist", schemaFile.getAbsolutePath()));
+    }
+    final String key;
+    try {
+      key = schemaFile.getCanonicalPath();
+    } catch (final IOException e) {
+      throw new LibraryValidatorException(String.format("Cannot resolve schema file %s", schemaFile.getAbsolutePath()), e);
+    }
+    final String stamp = schemaFile.lastModified() + ":" + schemaFile.length();
+    return getOrCompile(key, stamp, new Callable<CompiledSchema>() {
+      @Override
+      public CompiledSchema call() throws Exception {
+        try (InputStream in = new FileInputStream(schemaFile)) {
+          return compile(readFully(in), schemaFile.toURI().toString(), stamp);
+        }
+      }
+    });
+  }
+
+  /**
+   * Resolves an XSD path as given to {@link LibraryValidator#validateLibrary}: an existing file is compiled from disk, otherwise
+   * {@link LibraryValidator#XSD_PATH} designates the bundled schema.
+   */
+  public static CompiledSchema getSchema(@Nonnull final String xsdPath) throws LibraryValidatorException {
+    assert xsdPath != null : "XSD path is null";
+    final File schemaFile = new File(xsdPath);
+    if (!schemaFile.isFile() && LibraryValidator.XSD_PATH.equals(xsdPath)) {
+      return getBundledSchema();
+    }
+    return getSchema(schemaFile);
+  }
+
+  static void clear() {
+    SCHEMAS.clear();
+  }
+
+  private static CompiledSchema compile(@Nonnull final byte[] content, @Nonnull final String systemId, @Nonnull final String stamp)
+      throws Exception {
+    final long start = System.nanoTime();
+    final SchemaFactory factory = XmlParsers.getSchemaFactory();
+    final Schema schema;
+    synchronized (factory) {
+      schema = factory.newSchema(new StreamSource(new ByteArrayInputStream(content), systemId));
+    }
+    final long duration = System.nanoTime() - start;
+    LibraryValidator.getMetrics().recordPhase(ValidationPhase.SCHEMA_COMPILATION, duration);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(String.format("Compiled schema %s in %d ms", systemId, duration / 1000000L));
+    }
+    return new CompiledSchema(schema, ContentHash.hash(content), stamp);
+  }
+
+  private static CompiledSchema getOrCompile(@Nonnull final String key, @Nonnull final String stamp,
+      @Nonnull final Callable<CompiledSchema> compiler) throws LibraryValidatorException {
+    final long start = System.nanoTime();
+    while (true) {
+      FutureTask<CompiledSchema> task = SCHEMAS.get(key);
+      if (task == null) {
+        final FutureTask<CompiledSchema> newTask = new FutureTask<>(compiler);
+        task = SCHEMAS.putIfAbsent(key, newTask);
+        if (task == null) {
+          task = newTask;
+          newTask.run();
+        }
+      }
+
+      final CompiledSchema compiled;
+      try {
+        compiled = task.get();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new LibraryValidatorException(String.format("Interrupted while compiling schema %s", key), e);
+      } catch (final ExecutionException e) {
+        SCHEMAS.remove(key, task);
+        final Throwable cause = e.getCause();
+        final String msg = String.format("Error in compiling schema %s: %s", key, cause.getMessage());
+        if (LOGGER.isDebugEnabled()) {
+          LOGGER.debug(msg, cause);
+        }
+        throw new LibraryValidatorException(msg, cause instanceof Exception ? (Exception) cause : e);
+      }
+
+      if (compiled.getStamp().equals(stamp)) {
+        LibraryValidator.getMetrics().recordPhase(ValidationPhase.SCHEMA_LOOKUP, System.nanoTime() - start);
+        return compiled;
+      }
+      // the XSD changed on disk since it was compiled
+      SCHEMAS.remove(key, task);
+    }
+  }
+
+  static byte[] readFully(@Nonnull final InputStream in) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,98 @@
+package lu.hitec.pssu.melm.utils;
+
+import javax.annotation.Nonnull;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/**
+ * Forwards every SAX event to several handlers, so that they can all be fed by a single parse.
+ */
+final class TeeContentHandler implements ContentHandler {
+
+  private final ContentHandler[] handlers;
+
+  TeeContentHandler(@Nonnull final ContentHandler... handlers) {
+    assert handlers != null : "Handlers are null";
+    this.handlers = handlers.clone();
+  }
+
+  @Override
+  public void characters(final char[] ch, final int start, final int length) throws SAXException {
+    for (final ContentHandler handler : handlers) {
+      handler.characters(ch, start, length);
+    }
+  }
+
+  @Override
+  public void endDocument() throws SAXException {
+    for (final ContentHandler handler : handlers) {
+      handler.endDocument();
+    }
+  }
+
+  @Override
+  public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+    for (final ContentHandler handler : handlers) {
+      handler.endElement(uri, localName, qName);
+    }
+  }
+
+  @Override
+  public void endPrefixMapping(final String prefix) throws SAXException {
+    for (final ContentHandler handler : handlers) {
+      handler.endPrefixMapping(prefix);
+    }
+  }
+
+  @Override
+  public void ignorableWhitespace(final char[] ch, final int start, final int length) throws SAXException {
+    for (final ContentHandler handler : handlers) {
+      handler.ignorableWhitespace(ch, start, length);
+    }
+  }
+
+  @Override
+  public void processingInstruction(final String target, final String data) throws SAXException {
+    for (final ContentHandler handler : handlers) {
+      handler.processingInstruction(target, data);
+    }
+  }
+
+  @Override
+  public void setDocumentLocator(final Locator locator) {
+    for (final ContentHandler handler : handlers) {
+      handler.setDocumentLocator(locator);
+    }
+  }
+
+  @Override
+  public void skippedEntity(final String name) throws SAXException {
+    for (final ContentHandler handler : handlers) {
+      handler.skippedEntity(name);
+    }
+  }
+
+  @Override
+  public void startDocument() throws SAXException {
+    for (final ContentHandler handler : handlers) {
+      handler.startDocument();
+    }
+  }
+
+  @Override
+  public void startElement(final String uri, final String localName, final String qName, final Attributes atts) throws SAXException {
+    for (final ContentHandler handler : handlers) {
+      handler.startElement(uri, localName, qName, atts);
+    }
+  }
+
+  @Override
+  public void startPrefixMapping(final String prefix, final String uri) throws SAXException {
+    for (final ContentHandler handler : handlers) {
+      handler.startPrefixMapping(prefix, uri);
+    }
+  }
+}
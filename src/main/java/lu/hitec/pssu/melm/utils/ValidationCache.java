@@ -0,0 +1,342 @@
+package lu.hitec.pssu.melm.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of validation verdicts, stored as an append-only file of binary records. A verdict is keyed by a content hash of
+ * the library folder (the XML and its icons) combined with the fingerprint of the schema and the {@link #RULES_VERSION}, so that it is
+ * ignored as soon as any of them changes. Only the latest verdict of every library version is kept in memory, older records are dropped when the file is compacted.
+ */
+public final class ValidationCache implements Closeable {
+
+  /**
+   * Version of the checks run by the validator on top of the schema. It must be bumped whenever a check is added or changed, so that
+   * verdicts computed without it are not reused: 2 added the icon check, 3 the hierarchy integrity.
+   */
+  static final int RULES_VERSION = 3;
+
+  private static final int FORMAT_VERSION = 2;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ValidationCache.class);
+
+  private static final int MAGIC = 0x4d454c4d; // MELM
+
+  /** Number of characters of a failure message kept in the cache, the rest being cut. */
+  private static final int MAX_MESSAGE_LENGTH = 1 << 16;
+
+  /** Largest record accepted when loading, far above what a verdict takes. */
+  private static final int MAX_RECORD_LENGTH = 1 << 20;
+
+  private final File cacheFile;
+
+  private final Map<LibraryVersion, Verdict> verdicts = new HashMap<>();
+
+  private DataOutputStream out;
+
+  private int records;
+
+  private boolean rewrite;
+
+  private ValidationCache(@Nonnull final File cacheFile) {
+    this.cacheFile = cacheFile;
+  }
+
+  /**
+   * Computes the key of a library folder: every file below it is hashed, path and content, in a stable order, after the fingerprint of
+   * the schema and the version of the checks.
+   */
+  static byte[] computeKey(@Nonnull final CompiledSchema schema, @Nonnull final File libraryFolder) throws IOException {
+    assert schema != null : "Schema is null";
+    assert libraryFolder != null : "Library folder is null";
+    final MessageDigest digest = ContentHash.newDigest();
+    digest.update(schema.getFingerprint().getBytes(StandardCharsets.UTF_8));
+    digest.update(("\nrules " + RULES_VERSION + "\n").getBytes(StandardCharsets.UTF_8));
+    final List<String> relativePaths = new ArrayList<>();
+    listFiles(libraryFolder, "", relativePaths);
+    Collections.sort(relativePaths);
+    for (final String relativePath : relativePaths) {
+      digest.update(relativePath.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      ContentHash.update(digest, new File(libraryFolder, relativePath));
+    }
+    return digest.digest();
+  }
+
+  /**
+   * Opens the cache stored in the given file, creating it when missing. A file written in an unknown format, or that cannot be decoded,
+   * is discarded.
+   */
+  public static ValidationCache open(@Nonnull final File cacheFile) throws LibraryValidatorException {
+    assert cacheFile != null : "Cache file is null";
+    final ValidationCache cache = new ValidationCache(cacheFile);
+    try {
+      cache.load();
+      if (cache.rewrite || cache.records > 2 * cache.verdicts.size() + 16) {
+        cache.compact();
+      }
+      cache.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile, true)));
+      if (cacheFile.length() == 0) {
+        cache.out.writeInt(MAGIC);
+        cache.out.writeInt(FORMAT_VERSION);
+        cache.out.flush();
+      }
+    } catch (final IOException e) {
+      throw new LibraryValidatorException(String.format("Cannot open validation cache %s: %s", cacheFile.getAbsolutePath(),
+          e.getMessage()), e);
+    }
+    return cache;
+  }
+
+  private static void listFiles(@Nonnull final File directory, @Nonnull final String prefix, @Nonnull final List<String> relativePaths) {
+    final File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (final File file : files) {
+      if (file.isDirectory()) {
+        listFiles(file, prefix + file.getName() + "/", relativePaths);
+      } else {
+        relativePaths.add(prefix + file.getName());
+      }
+    }
+  }
+
+  /**
+   * Reads a string written by {@link #writeString(DataOutputStream, String)} from a record held in memory.
+   */
+  private static String readString(@Nonnull final DataInputStream in) throws IOException {
+    final int length = in.readInt();
+    if (length < 0 || length > in.available()) {
+      throw new IOException(String.format("String of %d bytes exceeds its record", length));
+    }
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static String readNullableUTF(@Nonnull final DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  /**
+   * Writes a string as length-prefixed UTF-8, which unlike {@link DataOutputStream#writeUTF(String)} is not limited to 64 KB.
+   */
+  private static void writeString(@Nonnull final DataOutputStream out, @Nonnull final String value) throws IOException {
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static void writeNullableUTF(@Nonnull final DataOutputStream out, final String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (out != null) {
+      out.close();
+      out = null;
+    }
+  }
+
+  public synchronized int size() {
+    return verdicts.size();
+  }
+
+  /**
+   * @return the cached verdict for the library version if it was computed for the same key, null otherwise.
+   */
+  synchronized Verdict get(@Nonnull final LibraryVersion libraryVersion, @Nonnull final byte[] key) {
+    final Verdict verdict = verdicts.get(libraryVersion);
+    return verdict != null && Arrays.equals(verdict.key, key) ? verdict : null;
+  }
+
+  synchronized void put(@Nonnull final LibraryVersion libraryVersion, @Nonnull final Verdict verdict) throws IOException {
+    assert libraryVersion != null : "Library version is null";
+    assert verdict != null : "Verdict is null";
+    if (out == null) {
+      throw new IOException("Validation cache is closed");
+    }
+    verdicts.put(libraryVersion, verdict);
+    write(out, libraryVersion, verdict);
+    out.flush();
+    records++;
+  }
+
+  private void compact() throws IOException {
+    final File compacted = new File(cacheFile.getPath() + ".tmp");
+    try (DataOutputStream tmp = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compacted)))) {
+      tmp.writeInt(MAGIC);
+      tmp.writeInt(FORMAT_VERSION);
+      for (final Map.Entry<LibraryVersion, Verdict> entry : verdicts.entrySet()) {
+        write(tmp, entry.getKey(), entry.getValue());
+      }
+    }
+    Files.move(compacted.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(String.format("Compacted validation cache %s from %d to %d records", cacheFile.getAbsolutePath(), records,
+          verdicts.size()));
+    }
+    records = verdicts.size();
+  }
+
+  /**
+   * Drops every verdict read from a corrupt file, which is rewritten before appending to it.
+   */
+  private void discard(@Nonnull final String reason) {
+    LOGGER.warn(String.format("Discarding validation cache %s: %s", cacheFile.getAbsolutePath(), reason));
+    verdicts.clear();
+    records = 0;
+    rewrite = true;
+  }
+
+  private void load() throws IOException {
+    if (!cacheFile.isFile() || cacheFile.length() == 0) {
+      return;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        LOGGER.warn(String.format("Discarding validation cache %s written in an unknown format", cacheFile.getAbsolutePath()));
+        rewrite = true;
+        return;
+      }
+      final long fileLength = cacheFile.length();
+      long position = 8;
+      int first;
+      while ((first = in.read()) != -1) {
+        final int length = (first << 24) | (in.readUnsignedByte() << 16) | in.readUnsignedShort();
+        position += 4;
+        if (length < 0 || length > MAX_RECORD_LENGTH) {
+          discard(String.format("record of %d bytes", length));
+          return;
+        }
+        if (length > fileLength - position) {
+          throw new EOFException();
+        }
+        final byte[] record = new byte[length];
+        in.readFully(record);
+        position += length;
+        try {
+          read(new DataInputStream(new ByteArrayInputStream(record)));
+        } catch (final IOException | RuntimeException e) {
+          discard(String.format("record %d cannot be decoded (%s)", records + 1, e));
+          return;
+        }
+        records++;
+      }
+    } catch (final EOFException e) {
+      // a record truncated by a crash is dropped, the file is rewritten before appending to it
+      rewrite = true;
+    }
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(String.format("Loaded %d verdicts from validation cache %s", verdicts.size(), cacheFile.getAbsolutePath()));
+    }
+  }
+
+  private void read(@Nonnull final DataInputStream in) throws IOException {
+    final LibraryVersion libraryVersion = new LibraryVersion(in.readUTF(), in.readUTF());
+    final byte[] key = new byte[in.readUnsignedByte()];
+    in.readFully(key);
+    final Verdict verdict;
+    if (in.readBoolean()) {
+      verdict = Verdict.valid(key, new LibraryDescription(readNullableUTF(in), readNullableUTF(in), readNullableUTF(in),
+          readNullableUTF(in), readNullableUTF(in)));
+    } else {
+      verdict = Verdict.invalid(key, readString(in));
+    }
+    verdicts.put(libraryVersion, verdict);
+  }
+
+  private void write(@Nonnull final DataOutputStream out, @Nonnull final LibraryVersion libraryVersion, @Nonnull final Verdict verdict)
+      throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+    final DataOutputStream stream = new DataOutputStream(bytes);
+    stream.writeUTF(libraryVersion.getLibraryName());
+    stream.writeUTF(libraryVersion.getVersion());
+    stream.writeByte(verdict.key.length);
+    stream.write(verdict.key);
+    stream.writeBoolean(verdict.isValid());
+    if (verdict.isValid()) {
+      final LibraryDescription description = verdict.description;
+      writeNullableUTF(stream, description.getLibraryType());
+      writeNullableUTF(stream, description.getLibraryVersion());
+      writeNullableUTF(stream, description.getLibraryName());
+      writeNullableUTF(stream, description.getLibraryDisplayName());
+      writeNullableUTF(stream, description.getLibraryIcon());
+    } else {
+      writeString(stream, verdict.message);
+    }
+    stream.flush();
+    out.writeInt(bytes.size());
+    bytes.writeTo(out);
+  }
+
+  static final class Verdict {
+
+    private final LibraryDescription description;
+
+    private final byte[] key;
+
+    private final String message;
+
+    private Verdict(@Nonnull final byte[] key, final LibraryDescription description, final String message) {
+      this.key = key;
+      this.description = description;
+      this.message = message;
+    }
+
+    /**
+     * @param message failure message, cut to {@link ValidationCache#MAX_MESSAGE_LENGTH} characters.
+     */
+    static Verdict invalid(@Nonnull final byte[] key, @Nonnull final String message) {
+      return new Verdict(key, null, message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) + " ..." : message);
+    }
+
+    static Verdict valid(@Nonnull final byte[] key, @Nonnull final LibraryDescription description) {
+      return new Verdict(key, description, null);
+    }
+
+    LibraryDescription getDescription() {
+      return description;
+    }
+
+    String getMessage() {
+      return message;
+    }
+
+    boolean isValid() {
+      return message == null;
+    }
+  }
+}
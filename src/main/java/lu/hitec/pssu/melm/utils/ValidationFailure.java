@@ -0,0 +1,23 @@
+package lu.hitec.pssu.melm.utils;
+
+/**
+ * Reasons of validation failures, counted by {@link ValidationMetrics}.
+ */
+public enum ValidationFailure {
+  /** The unzipped folder is missing or does not hold exactly one XML file. */
+  LIBRARY_NOT_FOUND,
+  /** The XML is not well-formed or does not conform to the schema. */
+  INVALID_XML,
+  /** The library name or version of the XML does not match the requested one. */
+  DESCRIPTION_MISMATCH,
+  /** The library type of the XML is unknown or is not the expected one. */
+  LIBRARY_TYPE_MISMATCH,
+  /** Icons referenced by the XML are missing from the library folder. */
+  MISSING_ICONS,
+  /** The hierarchy breaks a rule the schema does not express, see {@link IntegrityHandler}. */
+  INCONSISTENT_HIERARCHY,
+  /** The library files could not be read. */
+  IO_ERROR,
+  /** The {@link ValidationCache} holds an invalid verdict for the same content. */
+  CACHED_FAILURE
+}
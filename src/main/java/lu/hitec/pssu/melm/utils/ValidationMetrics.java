@@ -0,0 +1,45 @@
+package lu.hitec.pssu.melm.utils;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receives the measurements of {@link LibraryValidator}, installed through {@link LibraryValidator#setMetrics(ValidationMetrics)}.
+ * Implementations are called from every validating thread and must be thread-safe and cheap: they run on the validation path.
+ */
+public interface ValidationMetrics {
+
+  /**
+   * Default implementation, discarding every measurement.
+   */
+  ValidationMetrics NONE = new ValidationMetrics() {
+    @Override
+    public void recordBytesRead(final long bytes) {
+    }
+
+    @Override
+    public void recordFailure(@Nonnull final ValidationFailure failure) {
+    }
+
+    @Override
+    public void recordNodes(final int nodes) {
+    }
+
+    @Override
+    public void recordPhase(@Nonnull final ValidationPhase phase, final long durationNanos) {
+    }
+  };
+
+  /**
+   * Records the size of a library XML read by the validation pass.
+   */
+  void recordBytesRead(long bytes);
+
+  void recordFailure(@Nonnull ValidationFailure failure);
+
+  /**
+   * Records the number of hierarchy nodes of a library XML read by the validation pass.
+   */
+  void recordNodes(int nodes);
+
+  void recordPhase(@Nonnull ValidationPhase phase, long durationNanos);
+}
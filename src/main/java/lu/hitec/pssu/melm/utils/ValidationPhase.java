@@ -0,0 +1,21 @@
+package lu.hitec.pssu.melm.utils;
+
+/**
+ * Timed phases of a library validation, as reported to {@link ValidationMetrics}.
+ */
+public enum ValidationPhase {
+  /** Lookup of the library XML in its unzipped folder, including the creation of missing directories. */
+  LIBRARY_LOOKUP,
+  /** Lookup of the verdict in the {@link ValidationCache}, including the hashing of the library content. */
+  CACHE_LOOKUP,
+  /** Compilation of an XSD, which only happens on the first lookup of a schema or after it changed. */
+  SCHEMA_COMPILATION,
+  /** Lookup of a compiled schema in the {@link SchemaRegistry}, compilation included. */
+  SCHEMA_LOOKUP,
+  /** Non-validating read of the description header only, rejecting mismatching uploads before the full validation. */
+  HEADER_CHECK,
+  /** Streaming pass validating the XML against the schema and checking its description header. */
+  SINGLE_PASS,
+  /** Check of the icons referenced by the XML against the library folder. */
+  ICON_CHECK
+}
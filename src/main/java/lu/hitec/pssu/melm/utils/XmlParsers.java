@@ -0,0 +1,126 @@
+package lu.hitec.pssu.melm.utils;
+
+import javax.annotation.Nonnull;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+import javax.xml.validation.ValidatorHandler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Parser factories looked up once, and SAX parsers reused per thread, all configured to resolve nothing but the bundled schema.
+ * <p>
+ * A thread's parser is reset on every {@link #getXMLReader(ContentHandler)}, so a parse must complete before the same thread starts
+ * another one.
+ */
+final class XmlParsers {
+
+  private static final String EXTERNAL_DTD_FEATURE = "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(XmlParsers.class);
+
+  private static final SAXParserFactory PARSER_FACTORY = newParserFactory();
+
+  private static final ThreadLocal<SAXParser> PARSERS = new ThreadLocal<>();
+
+  private static final SchemaFactory SCHEMA_FACTORY = newSchemaFactory();
+
+  private XmlParsers() {
+  }
+
+  /**
+   * Restricts the external accesses of a validator: the compiled schema is self-sufficient, so nothing may be loaded while validating.
+   */
+  static void configure(@Nonnull final Validator validator) {
+    validator.setResourceResolver(LocalResourceResolver.INSTANCE);
+    try {
+      validator.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+      validator.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+    } catch (final SAXNotRecognizedException | SAXNotSupportedException e) {
+      unsupported(e);
+    }
+  }
+
+  static void configure(@Nonnull final ValidatorHandler validatorHandler) {
+    validatorHandler.setResourceResolver(LocalResourceResolver.INSTANCE);
+    try {
+      validatorHandler.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+      validatorHandler.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+    } catch (final SAXNotRecognizedException | SAXNotSupportedException e) {
+      unsupported(e);
+    }
+  }
+
+  /**
+   * @return the schema factory shared by all compilations, to be used while holding its lock.
+   */
+  static SchemaFactory getSchemaFactory() {
+    return SCHEMA_FACTORY;
+  }
+
+  /**
+   * @return the namespace-aware reader of the calling thread, reset and bound to the given handler.
+   */
+  static XMLReader getXMLReader(@Nonnull final ContentHandler handler) throws ParserConfigurationException, SAXException {
+    SAXParser parser = PARSERS.get();
+    if (parser == null) {
+      // factories are not guaranteed to be thread-safe, unlike the parsers they create once confined to a thread
+      synchronized (PARSER_FACTORY) {
+        parser = PARSER_FACTORY.newSAXParser();
+      }
+      PARSERS.set(parser);
+    } else {
+      parser.reset();
+    }
+    final XMLReader reader = parser.getXMLReader();
+    reader.setContentHandler(handler);
+    reader.setEntityResolver(LocalResourceResolver.INSTANCE);
+    reader.setErrorHandler(null);
+    try {
+      reader.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+    } catch (final SAXNotRecognizedException | SAXNotSupportedException e) {
+      unsupported(e);
+    }
+    return reader;
+  }
+
+  private static SAXParserFactory newParserFactory() {
+    final SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    try {
+      factory.setFeature(EXTERNAL_DTD_FEATURE, false);
+    } catch (final ParserConfigurationException | SAXNotRecognizedException | SAXNotSupportedException e) {
+      unsupported(e);
+    }
+    return factory;
+  }
+
+  private static SchemaFactory newSchemaFactory() {
+    final SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+    factory.setResourceResolver(LocalResourceResolver.INSTANCE);
+    try {
+      // a schema given as a file may still include its local siblings, but never anything remote
+      factory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+      factory.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "file,jar");
+    } catch (final SAXNotRecognizedException | SAXNotSupportedException e) {
+      unsupported(e);
+    }
+    return factory;
+  }
+
+  private static void unsupported(@Nonnull final Exception e) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(String.format("XML implementation does not support restricting external access: %s", e.getMessage()));
+    }
+  }
+}
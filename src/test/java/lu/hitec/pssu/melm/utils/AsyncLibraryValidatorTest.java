@@ -0,0 +1,145 @@
+package lu.hitec.pssu.melm.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AsyncLibraryValidatorTest {
+
+  private String baseDirectory;
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private AsyncLibraryValidator validator;
+
+  @Before
+  public void setUp() throws Exception {
+    baseDirectory = this.getClass().getResource("/sample/libraries").getPath();
+    validator = new AsyncLibraryValidator(SchemaRegistry.getBundledSchema(), baseDirectory, newBlockedExecutor(1), null);
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    validator.close();
+  }
+
+  private ThreadPoolExecutor newBlockedExecutor(final int queueCapacity) {
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+        queueCapacity));
+    // occupies the only worker so that submissions stay queued until released
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          release.await();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    return executor;
+  }
+
+  @Test
+  public void testClosedRejected() throws Exception {
+    validator.close();
+    try {
+      validator.submit("emergency.lu", "1.1");
+    } catch (final LibraryValidatorException e) {
+      assertTrue(e.getMessage().contains("closed"));
+      assertEquals(0, validator.getInFlightCount());
+      return;
+    }
+    throw new AssertionError("Submission to a closed validator was accepted");
+  }
+
+  @Test
+  public void testMissingLibraryCompletesImmediately() throws Exception {
+    final Future<LibraryValidationResult> future = validator.submit("emergency.lu", "9.9");
+    assertTrue(future.isDone());
+    assertFalse(future.get().isValid());
+    assertEquals(0, validator.getInFlightCount());
+    assertFalse(new File(baseDirectory, "emergency.lu/9.9").exists());
+  }
+
+  @Test
+  public void testOverloadRejected() throws Exception {
+    validator.submit("emergency.lu", "1.1");
+    try {
+      validator.submit("emergency.lu.wrong.name", "1.0");
+    } catch (final LibraryValidatorException e) {
+      assertEquals(1, validator.getInFlightCount());
+      return;
+    }
+    throw new AssertionError("Submission beyond the queue capacity was accepted");
+  }
+
+  @Test
+  public void testReplacedIconValidatedSeparately() throws Exception {
+    final File base = temporaryFolder.newFolder("libraries");
+    TestFiles.copy(new File(baseDirectory, "emergency.lu"), new File(base, "emergency.lu"));
+    final AsyncLibraryValidator copyValidator = new AsyncLibraryValidator(SchemaRegistry.getBundledSchema(), base.getPath(),
+        newBlockedExecutor(2), null);
+    try {
+      final Future<LibraryValidationResult> first = copyValidator.submit("emergency.lu", "1.1");
+
+      // overwriting a file in place changes neither the XML nor the modification time of the library folder
+      final File icons = new File(base, "emergency.lu/1.1/emergency.lu-1.1/20px");
+      final File icon = new File(icons, "Accident.png");
+      final long folderModified = icons.lastModified();
+      Files.copy(new File(icons, "Accident_selected.png").toPath(), icon.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      assertTrue(icon.setLastModified(icon.lastModified() + 10000));
+      assertTrue(icons.setLastModified(folderModified));
+
+      final Future<LibraryValidationResult> second = copyValidator.submit("emergency.lu", "1.1");
+      assertNotSame(first, second);
+      assertEquals(2, copyValidator.getInFlightCount());
+    } finally {
+      copyValidator.close();
+    }
+  }
+
+  @Test
+  public void testSameContentSharesValidation() throws Exception {
+    final Future<LibraryValidationResult> first = validator.submit("emergency.lu", "1.1");
+    final Future<LibraryValidationResult> second = validator.submit("emergency.lu", "1.1");
+    assertSame(first, second);
+    assertEquals(1, validator.getInFlightCount());
+
+    release.countDown();
+    final LibraryValidationResult result = first.get(30, TimeUnit.SECONDS);
+    assertTrue(result.isValid());
+    assertEquals(new LibraryVersion("emergency.lu", "1.1"), result.getLibraryVersion());
+
+    // the flight is over once the task has completed: a later submission validates again
+    while (validator.getInFlightCount() > 0) {
+      Thread.sleep(10);
+    }
+    final Future<LibraryValidationResult> third = validator.submit("emergency.lu", "1.1");
+    assertNotSame(first, third);
+    assertTrue(third.get(30, TimeUnit.SECONDS).isValid());
+  }
+}
@@ -0,0 +1,132 @@
+package lu.hitec.pssu.melm.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IconAtlasTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private String baseDirectory;
+
+  private File libraryFolder;
+
+  private static boolean overlap(final IconAtlas.Region a, final IconAtlas.Region b) {
+    return a.getX() < b.getX() + b.getWidth() && b.getX() < a.getX() + a.getWidth() && a.getY() < b.getY() + b.getHeight()
+        && b.getY() < a.getY() + a.getHeight();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    final File base = temporaryFolder.newFolder("base");
+    libraryFolder = new File(base, "emergency.lu/1.1/emergency.lu-1.1");
+    TestFiles.copy(new File(this.getClass().getResource("/sample/libraries/emergency.lu/1.1/emergency.lu-1.1").getPath()), libraryFolder);
+    baseDirectory = base.getPath();
+  }
+
+  @Test
+  public void testAtlasPerSizeFolder() throws LibraryValidatorException, IOException {
+    final List<IconAtlas> atlases = LibraryValidator.validateLibraryWithAtlas(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu",
+        "1.1");
+    final List<String> names = new ArrayList<>();
+    for (final IconAtlas atlas : atlases) {
+      names.add(atlas.getName());
+    }
+    assertEquals("[100px, 20px, 40px, 60px, default]", names.toString());
+
+    final IconAtlas atlas = atlases.get(1);
+    final IconAtlas.Region region = atlas.getRegion("Accident_selected.png");
+    assertNotNull(region);
+    final File icon = new File(libraryFolder, "20px/Accident_selected.png");
+    final PngHeader header = PngHeader.read(icon);
+    assertEquals(header.getWidth(), region.getWidth());
+    assertEquals(header.getHeight(), region.getHeight());
+
+    final List<IconAtlas.Region> regions = new ArrayList<>(atlas.getRegions().values());
+    for (int i = 0; i < regions.size(); i++) {
+      assertTrue(regions.get(i).getX() + regions.get(i).getWidth() <= atlas.getWidth());
+      assertTrue(regions.get(i).getY() + regions.get(i).getHeight() <= atlas.getHeight());
+      for (int j = i + 1; j < regions.size(); j++) {
+        assertFalse(regions.get(i) + " overlaps " + regions.get(j), overlap(regions.get(i), regions.get(j)));
+      }
+    }
+
+    final BufferedImage image = ImageIO.read(atlas.getImageFile());
+    final BufferedImage source = ImageIO.read(icon);
+    assertEquals(atlas.getWidth(), image.getWidth());
+    for (int x = 0; x < source.getWidth(); x++) {
+      for (int y = 0; y < source.getHeight(); y++) {
+        assertEquals(source.getRGB(x, y), image.getRGB(region.getX() + x, region.getY() + y));
+      }
+    }
+
+    final IconAtlas read = IconAtlas.read(new File(atlas.getImageFile().getParentFile(), "20px" + IconAtlas.INDEX_EXTENSION));
+    assertEquals(atlas.getRegions(), read.getRegions());
+    assertEquals(atlas.getImageFile(), read.getImageFile());
+    final Map<String, IconAtlas.Region> defaultRegions = atlases.get(4).getRegions();
+    assertTrue(defaultRegions.toString(), defaultRegions.containsKey("icon.png"));
+  }
+
+  @Test
+  public void testIconOfOtherSizeRejected() throws IOException, LibraryValidatorException {
+    Files.copy(new File(libraryFolder, "20px/Fire.png").toPath(), new File(libraryFolder, "40px/Fire.png").toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+    final File xmlFile = LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1");
+    try {
+      IconAtlas.generate(xmlFile, temporaryFolder.newFolder("atlas"));
+    } catch (final LibraryValidatorException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("40px/Fire.png (20x20 in a 40px folder)"));
+      return;
+    }
+    throw new AssertionError("Icon of another size was packed");
+  }
+
+  @Test
+  public void testOversizedIconRejected() throws IOException, LibraryValidatorException {
+    ImageIO.write(new BufferedImage(IconAtlas.MAX_SIZE + 1, 1, BufferedImage.TYPE_INT_ARGB), "png", new File(libraryFolder, "icon.png"));
+    final File xmlFile = LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1");
+    final File outputFolder = temporaryFolder.newFolder("atlas");
+    try {
+      IconAtlas.generate(xmlFile, outputFolder);
+    } catch (final LibraryValidatorException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("icon.png (4097x1 is larger than an atlas)"));
+      assertEquals(0, outputFolder.list().length);
+      return;
+    }
+    throw new AssertionError("Oversized icon was packed");
+  }
+
+  @Test
+  public void testInvalidPngRejected() throws IOException, LibraryValidatorException {
+    Files.write(new File(libraryFolder, "40px/Fire.png").toPath(), "not a png".getBytes("UTF-8"));
+    final File xmlFile = LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1");
+    try {
+      IconAtlas.generate(xmlFile, temporaryFolder.newFolder("atlas"));
+    } catch (final LibraryValidatorException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("40px/Fire.png (PNG signature is missing)"));
+      return;
+    }
+    throw new AssertionError("Invalid icon was packed");
+  }
+}
@@ -0,0 +1,103 @@
+package lu.hitec.pssu.melm.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Map;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IconStoreTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private String baseDirectory;
+
+  @Before
+  public void setUp() throws IOException {
+    final File base = temporaryFolder.newFolder("base");
+    final File sample = new File(this.getClass().getResource("/sample/libraries/emergency.lu/1.1/emergency.lu-1.1").getPath());
+    TestFiles.copy(sample, new File(base, "emergency.lu/1.1/emergency.lu-1.1"));
+    TestFiles.copy(sample, new File(base, "emergency.lu/1.2/emergency.lu-1.2"));
+    baseDirectory = base.getPath();
+  }
+
+  @Test
+  public void testBlobsReadOnly() throws LibraryValidatorException, IOException {
+    final IconStore store = new IconStore(baseDirectory);
+    final String hash = store.deduplicate("emergency.lu", "1.1").getHashes().get("20px/Accident.png");
+    assertFalse(Files.getPosixFilePermissions(store.getBlob(hash).toPath()).contains(PosixFilePermission.OWNER_WRITE));
+    assertFalse(Files.getPosixFilePermissions(new File(baseDirectory, "emergency.lu/1.1/emergency.lu-1.1/20px/Accident.png").toPath())
+        .contains(PosixFilePermission.OWNER_WRITE));
+  }
+
+  @Test
+  public void testCorruptedBlobDropped() throws LibraryValidatorException, IOException {
+    final IconStore store = new IconStore(baseDirectory);
+    final String hash = store.deduplicate("emergency.lu", "1.1").getHashes().get("40px/Fire_selected.png");
+    final File blob = store.getBlob(hash);
+    assertTrue(blob.setWritable(true));
+    Files.write(blob.toPath(), "corrupted".getBytes(StandardCharsets.UTF_8));
+    Files.delete(new File(baseDirectory, "emergency.lu/1.1/emergency.lu-1.1/40px/Fire_selected.png").toPath());
+    try {
+      store.restore("emergency.lu", "1.1");
+      throw new AssertionError("Corrupted blob was restored");
+    } catch (final LibraryValidatorException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("corrupted in the store"));
+    }
+    assertFalse(blob.exists());
+
+    store.deduplicate("emergency.lu", "1.2");
+    assertEquals(hash, ContentHash.hash(blob));
+  }
+
+  @Test
+  public void testDeduplicateAcrossVersions() throws LibraryValidatorException, IOException {
+    final IconStore store = new IconStore(baseDirectory);
+    final IconStore.Report first = store.deduplicate("emergency.lu", "1.1");
+    assertTrue(first.getStored() > 0);
+    assertEquals(first.getHashes().size(), first.getStored() + first.getLinked());
+
+    final IconStore.Report second = store.deduplicate("emergency.lu", "1.2");
+    assertEquals(0, second.getStored());
+    assertEquals(second.getHashes().size(), second.getLinked() + second.getKept());
+    if (second.getKept() == 0) {
+      assertTrue(second.getSavedBytes() > 0);
+      assertTrue(Files.isSameFile(new File(baseDirectory, "emergency.lu/1.1/emergency.lu-1.1/20px/Accident.png").toPath(), new File(
+          baseDirectory, "emergency.lu/1.2/emergency.lu-1.2/20px/Accident.png").toPath()));
+      assertEquals(0, store.deduplicate("emergency.lu", "1.2").getSavedBytes());
+    }
+
+    final Map<String, String> manifest = store.readManifest("emergency.lu", "1.2");
+    assertEquals(second.getHashes(), manifest);
+    assertTrue(store.getBlob(manifest.get("20px/Accident.png")).isFile());
+    LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1");
+  }
+
+  @Test
+  public void testRestore() throws LibraryValidatorException, IOException {
+    final IconStore store = new IconStore(baseDirectory);
+    assertEquals(0, store.readManifest("emergency.lu", "1.1").size());
+    store.deduplicate("emergency.lu", "1.1");
+    final File icon = new File(baseDirectory, "emergency.lu/1.1/emergency.lu-1.1/40px/Fire_selected.png");
+    final byte[] content = Files.readAllBytes(icon.toPath());
+    Files.delete(icon.toPath());
+
+    assertEquals(1, store.restore("emergency.lu", "1.1"));
+    assertArrayEquals(content, Files.readAllBytes(icon.toPath()));
+    assertEquals(0, store.restore("emergency.lu", "1.1"));
+  }
+}
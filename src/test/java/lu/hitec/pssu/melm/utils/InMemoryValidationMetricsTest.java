@@ -0,0 +1,90 @@
+package lu.hitec.pssu.melm.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InMemoryValidationMetricsTest {
+
+  private String baseDirectory;
+
+  private InMemoryValidationMetrics metrics;
+
+  private void assertFailure(final String libraryName, final String version, final ValidationFailure failure) {
+    try {
+      LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory, libraryName, version);
+    } catch (final LibraryValidatorException e) {
+      assertEquals(1, metrics.getFailureCount(failure));
+      return;
+    }
+    throw new AssertionError(String.format("%s-%s was accepted", libraryName, version));
+  }
+
+  @Before
+  public void setUp() {
+    baseDirectory = this.getClass().getResource("/sample/libraries").getPath();
+    metrics = new InMemoryValidationMetrics();
+    LibraryValidator.setMetrics(metrics);
+  }
+
+  @After
+  public void tearDown() {
+    LibraryValidator.setMetrics(ValidationMetrics.NONE);
+  }
+
+  @Test
+  public void testBuckets() {
+    assertEquals(0, InMemoryValidationMetrics.bucket(999));
+    assertEquals(1, InMemoryValidationMetrics.bucket(1000));
+    assertEquals(2, InMemoryValidationMetrics.bucket(3999));
+    assertEquals(InMemoryValidationMetrics.BUCKETS - 1, InMemoryValidationMetrics.bucket(Long.MAX_VALUE));
+
+    metrics.recordPhase(ValidationPhase.SINGLE_PASS, 1500);
+    metrics.recordPhase(ValidationPhase.SINGLE_PASS, 3000000);
+    final InMemoryValidationMetrics.PhaseStatistics statistics = metrics.getPhaseStatistics(ValidationPhase.SINGLE_PASS);
+    assertEquals(2, statistics.getCount());
+    assertEquals(1500750, statistics.getMeanNanos());
+    assertEquals(2000, statistics.getPercentileNanos(0.5));
+    assertEquals(3000000, statistics.getPercentileNanos(0.99));
+  }
+
+  @Test
+  public void testDescriptionMismatchCounted() {
+    assertFailure("emergency.lu.wrong.name", "1.0", ValidationFailure.DESCRIPTION_MISMATCH);
+  }
+
+  @Test
+  public void testInvalidXmlCounted() {
+    assertFailure("emergency.lu.broken.xml", "1.0", ValidationFailure.INVALID_XML);
+  }
+
+  @Test
+  public void testLibraryNotFoundCounted() {
+    // the unzipped folder of this sample is not named after the library version
+    assertFailure("emergency.lu.incorrect.icon.path", "1.0", ValidationFailure.LIBRARY_NOT_FOUND);
+  }
+
+  @Test
+  public void testPhasesRecorded() throws LibraryValidatorException {
+    final File xmlFile = LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1");
+    assertEquals(1, metrics.getPhaseStatistics(ValidationPhase.SCHEMA_LOOKUP).getCount());
+    assertEquals(1, metrics.getPhaseStatistics(ValidationPhase.LIBRARY_LOOKUP).getCount());
+    assertEquals(1, metrics.getPhaseStatistics(ValidationPhase.SINGLE_PASS).getCount());
+    assertEquals(1, metrics.getPhaseStatistics(ValidationPhase.ICON_CHECK).getCount());
+    assertEquals(0, metrics.getPhaseStatistics(ValidationPhase.CACHE_LOOKUP).getCount());
+    assertTrue(metrics.getPhaseStatistics(ValidationPhase.SINGLE_PASS).getTotalNanos() > 0);
+    assertEquals(xmlFile.length(), metrics.getBytesRead());
+    assertTrue(metrics.getNodeCount() > 0);
+
+    metrics.reset();
+    assertEquals(0, metrics.getPhaseStatistics(ValidationPhase.SINGLE_PASS).getCount());
+    assertEquals(0, metrics.getBytesRead());
+  }
+}
@@ -0,0 +1,60 @@
+package lu.hitec.pssu.melm.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+public class IntegrityHandlerTest {
+
+  private static final String HEADER = "<elements xmlns=\"http://hitec.lu/pss/xsd/mapelement/hierarchy\">"
+      + "<description><library-type>points</library-type></description>";
+
+  private static List<String> check(final InputSource input) throws Exception {
+    final IntegrityHandler handler = new IntegrityHandler();
+    XmlParsers.getXMLReader(handler).parse(input);
+    return handler.getViolations();
+  }
+
+  private static String node(final String code, final String uniqueCode, final String choiceValue, final String content) {
+    return String.format("<node%s unique-code=\"%s\" choice-value=\"%s\" description=\"%s\">%s</node>",
+        code == null ? "" : " hierarchy-code=\"" + code + "\"", uniqueCode, choiceValue, uniqueCode, content);
+  }
+
+  @Test
+  public void testConsistentLibrary() throws Exception {
+    final File xmlFile = new File(this.getClass().getResource("/sample/xml/vehicles-1.0.xml").toURI());
+    assertEquals(0, check(new InputSource(xmlFile.toURI().toString())).size());
+  }
+
+  @Test
+  public void testMissingCodeNotChecked() throws Exception {
+    final String xml = HEADER + "<choice>"
+        + node("1.1", "Ground", "Ground", "<choice>" + node(null, "Truck", "Truck", "") + "</choice>")
+        + node(null, "Air", "Air", "<choice>" + node("1.2.1", "Plane", "Plane", "") + "</choice>") + "</choice></elements>";
+    assertEquals(0, check(new InputSource(new StringReader(xml))).size());
+  }
+
+  @Test
+  public void testViolationsReportedTogether() throws Exception {
+    final String element = "<element description=\"Element\"><extension ref=\"ext-missing\"/><point/></element>";
+    final String xml = HEADER + "<choice>"
+        + node("1.1", "Ground", "Ground", "<choice>" + node("1.1.1", "Truck", "Vehicle", "") + node("1.2.1", "Bus", "Vehicle", "")
+            + node("1.1.3", "Car", "Car", "<choice>" + node("1.1.3.1.1", "Van", "Van", "") + "</choice>") + "</choice>")
+        + node("1.2", "Truck", "Other truck", element) + node("1.3", "Boat", "Boat", "") + "</choice>"
+        + "<extensions><extension id=\"ext-status\"/><extension id=\"ext-status\"/></extensions></elements>";
+    final List<String> violations = check(new InputSource(new StringReader(xml)));
+    assertEquals(violations.toString(), 6, violations.size());
+    assertTrue(violations.get(0), violations.get(0).contains("\"Vehicle\" already used"));
+    assertTrue(violations.get(1), violations.get(1).contains("1.2.1 does not extend 1.1"));
+    assertTrue(violations.get(2), violations.get(2).contains("1.1.3.1.1 does not extend 1.1.3"));
+    assertTrue(violations.get(3), violations.get(3).contains("Truck: unique-code already used"));
+    assertTrue(violations.get(4), violations.get(4).contains("ext-status is declared more than once"));
+    assertTrue(violations.get(5), violations.get(5).contains("undeclared extension ext-missing"));
+  }
+}
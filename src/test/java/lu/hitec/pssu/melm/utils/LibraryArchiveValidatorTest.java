@@ -0,0 +1,167 @@
+package lu.hitec.pssu.melm.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LibraryArchiveValidatorTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testExtractArchive() throws IOException, URISyntaxException, LibraryValidatorException {
+    final File zipFile = zipLibrary("emergency.lu/1.1/emergency.lu-1.1", null);
+    final String baseDirectory = temporaryFolder.newFolder("base").getPath();
+    final File xmlFile = LibraryArchiveValidator.extractArchive(LibraryValidator.XSD_PATH, zipFile, baseDirectory, "emergency.lu", "1.1");
+    assertTrue(xmlFile.isFile());
+    assertTrue(new File(xmlFile.getParentFile(), "20px/Accident_selected.png").isFile());
+    assertEquals(xmlFile, LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1"));
+  }
+
+  @Test
+  public void testExtractArchiveRejectedWritesNothing() throws IOException, URISyntaxException {
+    final File zipFile = zipLibrary("emergency.lu/1.1/emergency.lu-1.1", null);
+    final File baseDirectory = temporaryFolder.newFolder("base");
+    try {
+      LibraryArchiveValidator.extractArchive(LibraryValidator.XSD_PATH, zipFile, baseDirectory.getPath(), "emergency.lu", "1.0");
+    } catch (final LibraryValidatorException e) {
+      assertEquals(0, baseDirectory.list().length);
+      return;
+    }
+    throw new AssertionError("Archive with a wrong version was extracted");
+  }
+
+  @Test
+  public void testExtractArchiveReplacesEarlierExtraction() throws IOException, URISyntaxException, LibraryValidatorException {
+    final File zipFile = zipLibrary("emergency.lu/1.1/emergency.lu-1.1", null);
+    final String baseDirectory = temporaryFolder.newFolder("base").getPath();
+    final File xmlFile = LibraryArchiveValidator.extractArchive(LibraryValidator.XSD_PATH, zipFile, baseDirectory, "emergency.lu", "1.1");
+    final File stale = new File(xmlFile.getParentFile(), "stale.xml");
+    Files.copy(xmlFile.toPath(), stale.toPath());
+
+    assertEquals(xmlFile, LibraryArchiveValidator.extractArchive(LibraryValidator.XSD_PATH, zipFile, baseDirectory, "emergency.lu",
+        "1.1"));
+    assertFalse(stale.exists());
+    assertEquals(Arrays.asList("emergency.lu-1.1"), Arrays.asList(xmlFile.getParentFile().getParentFile().list()));
+    LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1");
+  }
+
+  @Test
+  public void testValidateArchive() throws IOException, URISyntaxException, LibraryValidatorException {
+    final File zipFile = zipLibrary("emergency.lu/1.1/emergency.lu-1.1", null);
+    final LibraryDescription description = LibraryArchiveValidator.validateArchive(LibraryValidator.XSD_PATH, zipFile, "emergency.lu",
+        "1.1");
+    assertEquals("points", description.getLibraryType());
+  }
+
+  @Test
+  public void testValidateArchiveFailureCounted() throws IOException, URISyntaxException {
+    final File zipFile = zipLibrary("emergency.lu/1.1/emergency.lu-1.1", "40px/Fire.png");
+    final InMemoryValidationMetrics metrics = new InMemoryValidationMetrics();
+    LibraryValidator.setMetrics(metrics);
+    try {
+      LibraryArchiveValidator.validateArchive(LibraryValidator.XSD_PATH, zipFile, "emergency.lu", "1.1");
+      throw new AssertionError("Archive with a missing icon was accepted");
+    } catch (final LibraryValidatorException e) {
+      assertEquals(1, metrics.getFailureCount(ValidationFailure.MISSING_ICONS));
+    } finally {
+      LibraryValidator.setMetrics(ValidationMetrics.NONE);
+    }
+  }
+
+  @Test
+  public void testValidateArchiveInconsistentHierarchy() throws IOException, URISyntaxException {
+    final File root = temporaryFolder.newFolder("emergency.lu-1.1");
+    final File source = new File(this.getClass().getResource("/sample/libraries/emergency.lu/1.1/emergency.lu-1.1").toURI());
+    TestFiles.copy(source, root);
+    final File xml = new File(root, "emergency.lu-1.1.xml");
+    final String content = new String(Files.readAllBytes(xml.toPath()), StandardCharsets.UTF_8);
+    Files.write(xml.toPath(), content.replace("unique-code=\"Fire\" choice-value=\"Fire\"", "unique-code=\"Fire\" choice-value=\"Firearm\"")
+        .getBytes(StandardCharsets.UTF_8));
+    try {
+      LibraryArchiveValidator.validateArchive(LibraryValidator.XSD_PATH, zipLibrary(root, null), "emergency.lu", "1.1");
+    } catch (final LibraryValidatorException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Library hierarchy is inconsistent"));
+      return;
+    }
+    throw new AssertionError("Archive with an inconsistent hierarchy was accepted");
+  }
+
+  @Test(expected = LibraryValidatorException.class)
+  public void testValidateArchiveMissingIcon() throws IOException, URISyntaxException, LibraryValidatorException {
+    final File zipFile = zipLibrary("emergency.lu/1.1/emergency.lu-1.1", "40px/Fire.png");
+    LibraryArchiveValidator.validateArchive(LibraryValidator.XSD_PATH, zipFile, "emergency.lu", "1.1");
+  }
+
+  @Test
+  public void testValidateArchiveStream() throws IOException, URISyntaxException, LibraryValidatorException {
+    final File zipFile = zipLibrary("emergency.lu.wrong.name/1.0/emergency.lu.wrong.name-1.0", null);
+    try (InputStream in = new FileInputStream(zipFile)) {
+      LibraryArchiveValidator.validateArchive(LibraryValidator.XSD_PATH, in, "wrongName", "1.0");
+    }
+  }
+
+  @Test(expected = LibraryValidatorException.class)
+  public void testValidateArchiveStreamMissingIcon() throws IOException, URISyntaxException, LibraryValidatorException {
+    final File zipFile = zipLibrary("emergency.lu.wrong.name/1.0/emergency.lu.wrong.name-1.0", "SymbolsPOI/Fire.png");
+    try (InputStream in = new FileInputStream(zipFile)) {
+      LibraryArchiveValidator.validateArchive(LibraryValidator.XSD_PATH, in, "wrongName", "1.0");
+    }
+  }
+
+  @Test
+  public void testValidateArchiveWrongName() throws IOException, URISyntaxException {
+    final File zipFile = zipLibrary("emergency.lu.wrong.name/1.0/emergency.lu.wrong.name-1.0", null);
+    try {
+      LibraryArchiveValidator.validateArchive(LibraryValidator.XSD_PATH, zipFile, "emergency.lu.wrong.name", "1.0");
+    } catch (final LibraryValidatorException e) {
+      assertFalse(e.getMessage().isEmpty());
+      return;
+    }
+    throw new AssertionError("Archive with a wrong name was accepted");
+  }
+
+  private void addEntries(final ZipOutputStream out, final File root, final File directory, final String skipped) throws IOException {
+    for (final File file : directory.listFiles()) {
+      final String relativePath = root.toURI().relativize(file.toURI()).getPath();
+      if (file.isDirectory()) {
+        addEntries(out, root, file, skipped);
+      } else if (!relativePath.equals(skipped)) {
+        out.putNextEntry(new ZipEntry(root.getName() + "/" + relativePath));
+        Files.copy(file.toPath(), out);
+        out.closeEntry();
+      }
+    }
+  }
+
+  private File zipLibrary(final String unzippedFolder, final String skipped) throws IOException, URISyntaxException {
+    return zipLibrary(new File(this.getClass().getResource("/sample/libraries/" + unzippedFolder).toURI()), skipped);
+  }
+
+  private File zipLibrary(final File root, final String skipped) throws IOException {
+    final File zipFile = temporaryFolder.newFile(root.getName() + ".zip");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile))) {
+      addEntries(out, root, root, skipped);
+    }
+    return zipFile;
+  }
+}
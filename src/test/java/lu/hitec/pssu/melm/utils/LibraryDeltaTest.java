@@ -0,0 +1,198 @@
+package lu.hitec.pssu.melm.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LibraryDeltaTest {
+
+  private static final String ADDED_NODE = "<node hierarchy-code=\"1.9\" unique-code=\"Ambulance\" choice-value=\"Ambulance\" "
+      + "description=\"Ambulance\"><element description=\"Ambulance\"><point><icon file=\"Fire\" anchor=\"NE\" /></point></element>"
+      + "</node>\n    ";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private String baseDirectory;
+
+  private File sample;
+
+  private File copyVersion(final File base) throws IOException {
+    final File folder = new File(base, "emergency.lu/1.1/emergency.lu-1.1");
+    TestFiles.copy(sample, folder);
+    Files.copy(new File(sample, "20px/Fire.png").toPath(), new File(folder, "20px/Old.png").toPath());
+    return folder;
+  }
+
+  /**
+   * @return a copy of the delta package, the given text being replaced in the entries ending with the suffix.
+   */
+  private File tamper(final File deltaFile, final String suffix, final String text, final String replacement) throws IOException {
+    final File tamperedFile = temporaryFolder.newFile("tampered.zip");
+    try (ZipFile zip = new ZipFile(deltaFile); ZipOutputStream out = new ZipOutputStream(new FileOutputStream(tamperedFile))) {
+      for (final ZipEntry entry : Collections.list(zip.entries())) {
+        out.putNextEntry(new ZipEntry(entry.getName()));
+        try (InputStream in = zip.getInputStream(entry)) {
+          final byte[] content = SchemaRegistry.readFully(in);
+          if (entry.getName().endsWith(suffix)) {
+            out.write(new String(content, StandardCharsets.UTF_8).replace(text, replacement).getBytes(StandardCharsets.UTF_8));
+          } else {
+            out.write(content);
+          }
+        }
+        out.closeEntry();
+      }
+    }
+    return tamperedFile;
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    sample = new File(this.getClass().getResource("/sample/libraries/emergency.lu/1.1/emergency.lu-1.1").getPath());
+    final File base = temporaryFolder.newFolder("base");
+    copyVersion(base);
+
+    // 1.2 drops Accomodation, adds Ambulance, moves the anchor of Airplane and redraws the Accident icon
+    final File folder = new File(base, "emergency.lu/1.2/emergency.lu-1.2");
+    TestFiles.copy(sample, folder);
+    final File xmlFile = new File(folder, "emergency.lu-1.1.xml");
+    String xml = new String(Files.readAllBytes(xmlFile.toPath()), StandardCharsets.UTF_8);
+    final int start = xml.indexOf("<node hierarchy-code=\"1.1\" unique-code=\"Accomodation\"");
+    xml = xml.substring(0, start) + ADDED_NODE + xml.substring(xml.indexOf("</node>", start) + "</node>".length()).trim();
+    xml = xml.replace("<library-version>1.1</library-version>", "<library-version>1.2</library-version>").replace(
+        "<icon file=\"Airplane\" anchor=\"NE\" />", "<icon file=\"Airplane\" anchor=\"N\" />");
+    Files.delete(xmlFile.toPath());
+    Files.write(new File(folder, "emergency.lu-1.2.xml").toPath(), xml.getBytes(StandardCharsets.UTF_8));
+    Files.copy(new File(sample, "20px/Fire.png").toPath(), new File(folder, "20px/Accident.png").toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+    Files.copy(new File(sample, "20px/Fire.png").toPath(), new File(folder, "20px/Extra.png").toPath());
+    baseDirectory = base.getPath();
+  }
+
+  @Test
+  public void testApplyDelta() throws IOException, LibraryValidatorException {
+    final File deltaFile = temporaryFolder.newFile("emergency.lu-1.1-1.2.zip");
+    LibraryDelta.createDelta(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1", "1.2", deltaFile);
+
+    final File client = temporaryFolder.newFolder("client");
+    copyVersion(client);
+    final File xmlFile = LibraryDelta.applyDelta(LibraryValidator.XSD_PATH, client.getPath(), deltaFile);
+    assertEquals("emergency.lu-1.2.xml", xmlFile.getName());
+    assertEquals(LibraryDiff.hashFiles(new File(baseDirectory, "emergency.lu/1.2/emergency.lu-1.2")), LibraryDiff.hashFiles(xmlFile
+        .getParentFile()));
+  }
+
+  @Test
+  public void testApplyDeltaInvalidResult() throws IOException, LibraryValidatorException {
+    final File deltaFile = temporaryFolder.newFile("emergency.lu-1.1-1.2.zip");
+    LibraryDelta.createDelta(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1", "1.2", deltaFile);
+    // the shipped XML references an icon that neither version has
+    final File tamperedFile = tamper(deltaFile, ".xml", "<icon file=\"Fire\"", "<icon file=\"Missing\"");
+
+    final File client = temporaryFolder.newFolder("client");
+    copyVersion(client);
+    try {
+      LibraryDelta.applyDelta(LibraryValidator.XSD_PATH, client.getPath(), tamperedFile);
+    } catch (final LibraryValidatorException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("Missing"));
+      assertFalse(new File(client, "emergency.lu/1.2").exists());
+      assertEquals(Arrays.asList("1.1"), Arrays.asList(new File(client, "emergency.lu").list()));
+      return;
+    }
+    throw new AssertionError("Delta with an invalid result was applied");
+  }
+
+  @Test
+  public void testApplyDeltaOutsideBaseDirectory() throws IOException, LibraryValidatorException {
+    final File deltaFile = temporaryFolder.newFile("emergency.lu-1.1-1.2.zip");
+    LibraryDelta.createDelta(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1", "1.2", deltaFile);
+    final File tamperedFile = tamper(deltaFile, LibraryDelta.MANIFEST, "to\t1.2", "to\t../../elsewhere/1.2");
+
+    final File client = temporaryFolder.newFolder("client");
+    copyVersion(client);
+    try {
+      LibraryDelta.applyDelta(LibraryValidator.XSD_PATH, client.getPath(), tamperedFile);
+    } catch (final LibraryValidatorException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("not a plain folder name"));
+      assertFalse(new File(temporaryFolder.getRoot(), "elsewhere").exists());
+      return;
+    }
+    throw new AssertionError("Delta escaping the base directory was applied");
+  }
+
+  @Test
+  public void testApplyDeltaPrunesEmptiedFolders() throws IOException, LibraryValidatorException {
+    // 1.1 ships an icon of its own in a folder that 1.2 no longer has
+    final File legacy = new File(baseDirectory, "emergency.lu/1.1/emergency.lu-1.1/legacy/icons");
+    assertTrue(legacy.mkdirs());
+    Files.copy(new File(sample, "20px/Fire.png").toPath(), new File(legacy, "Old.png").toPath());
+    final File deltaFile = temporaryFolder.newFile("emergency.lu-1.1-1.2.zip");
+    LibraryDelta.createDelta(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1", "1.2", deltaFile);
+
+    final File client = temporaryFolder.newFolder("client");
+    final File folder = copyVersion(client);
+    assertTrue(new File(folder, "legacy/icons").mkdirs());
+    Files.copy(new File(sample, "20px/Fire.png").toPath(), new File(folder, "legacy/icons/Old.png").toPath());
+    final File xmlFile = LibraryDelta.applyDelta(LibraryValidator.XSD_PATH, client.getPath(), deltaFile);
+    assertFalse(new File(xmlFile.getParentFile(), "legacy").exists());
+    assertTrue(new File(xmlFile.getParentFile(), "20px").isDirectory());
+  }
+
+  @Test
+  public void testApplyDeltaToOtherContent() throws IOException, LibraryValidatorException {
+    final File deltaFile = temporaryFolder.newFile("emergency.lu-1.1-1.2.zip");
+    LibraryDelta.createDelta(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1", "1.2", deltaFile);
+
+    final File client = temporaryFolder.newFolder("client");
+    final File folder = copyVersion(client);
+    Files.delete(new File(folder, "20px/Old.png").toPath());
+    try {
+      LibraryDelta.applyDelta(LibraryValidator.XSD_PATH, client.getPath(), deltaFile);
+    } catch (final LibraryValidatorException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("differs from the one the delta was built from"));
+      assertFalse(new File(client, "emergency.lu/1.2/emergency.lu-1.2").exists());
+      return;
+    }
+    throw new AssertionError("Delta applied to a different library");
+  }
+
+  @Test
+  public void testCreateDelta() throws IOException, LibraryValidatorException {
+    final File deltaFile = temporaryFolder.newFile("emergency.lu-1.1-1.2.zip");
+    final LibraryDiff diff = LibraryDelta.createDelta(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1", "1.2",
+        deltaFile);
+    assertEquals(Arrays.asList("Ambulance"), diff.getAddedNodes());
+    assertEquals(Arrays.asList("Accomodation"), diff.getRemovedNodes());
+    assertEquals(Collections.singletonMap("Airplane", Arrays.asList(LibraryDiff.FIELD_ICONS)), diff.getModifiedNodes());
+    assertEquals(Collections.singleton("20px/Extra.png"), diff.getAddedIcons());
+    assertEquals(Collections.singleton("20px/Old.png"), diff.getRemovedIcons());
+    assertEquals(Collections.singleton("20px/Accident.png"), diff.getChangedIcons());
+    assertFalse(diff.isEmpty());
+
+    try (ZipFile zip = new ZipFile(deltaFile)) {
+      assertEquals(4, zip.size());
+      assertTrue(zip.getEntry(LibraryDelta.FILES + "emergency.lu-1.2.xml") != null);
+    }
+    assertTrue(LibraryValidator.diffLibraries(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1", "1.1").isEmpty());
+  }
+}
@@ -0,0 +1,100 @@
+package lu.hitec.pssu.melm.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LibraryDirectoryWatcherTest {
+
+  private static final long TIMEOUT_SECONDS = 20;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File base;
+
+  private final BlockingQueue<LibraryValidationResult> results = new LinkedBlockingQueue<>();
+
+  private LibraryDirectoryWatcher watcher;
+
+  @Before
+  public void setUp() throws IOException, LibraryValidatorException {
+    base = temporaryFolder.newFolder("libraries");
+    TestFiles.copy(new File(this.getClass().getResource("/sample/libraries/emergency.lu").getPath()), new File(base, "emergency.lu"));
+    watcher = LibraryDirectoryWatcher.start(LibraryValidator.XSD_PATH, base.getPath(), 200, null);
+    watcher.addListener(new LibraryValidationListener() {
+      @Override
+      public void libraryValidated(@Nonnull final LibraryValidationResult result) {
+        results.add(result);
+      }
+    });
+  }
+
+  @After
+  public void tearDown() {
+    watcher.close();
+  }
+
+  @Test
+  public void testBurstRevalidatedOnce() throws Exception {
+    final File xmlFile = LibraryValidator.findLibraryXml(base.getPath(), "emergency.lu", "1.1");
+    final byte[] content = Files.readAllBytes(xmlFile.toPath());
+    for (int i = 0; i < 5; i++) {
+      Files.write(xmlFile.toPath(), content);
+    }
+    final LibraryValidationResult result = results.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    assertNotNull(result);
+    assertTrue(result.isValid());
+    assertEquals(new LibraryVersion("emergency.lu", "1.1"), result.getLibraryVersion());
+    assertNull(results.poll(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testNewLibraryVersionValidated() throws Exception {
+    TestFiles.copy(new File(this.getClass().getResource("/sample/libraries/emergency.lu.wrong.name").getPath()), new File(base,
+        "emergency.lu.wrong.name"));
+    final LibraryValidationResult result = results.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    assertNotNull(result);
+    assertEquals(new LibraryVersion("emergency.lu.wrong.name", "1.0"), result.getLibraryVersion());
+    assertFalse(result.isValid());
+  }
+
+  @Test
+  public void testRemovedLibraryVersionReported() throws Exception {
+    final File versionDir = new File(new File(base, "emergency.lu"), "1.1");
+    delete(versionDir);
+    final LibraryValidationResult result = results.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    assertNotNull(result);
+    assertEquals(new LibraryVersion("emergency.lu", "1.1"), result.getLibraryVersion());
+    assertFalse(result.isValid());
+    assertFalse(versionDir.exists());
+  }
+
+  private void delete(final File file) throws IOException {
+    if (file.isDirectory()) {
+      for (final File child : file.listFiles()) {
+        delete(child);
+      }
+    }
+    Files.delete(file.toPath());
+  }
+}
@@ -0,0 +1,86 @@
+package lu.hitec.pssu.melm.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LibraryIndexTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private LibraryIndex index;
+
+  private List<String> uniqueCodes(final List<Integer> nodes) {
+    final String[] codes = new String[nodes.size()];
+    for (int i = 0; i < codes.length; i++) {
+      codes[i] = index.getLibrary().getUniqueCode(nodes.get(i));
+    }
+    return Arrays.asList(codes);
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    index = new LibraryIndex(LibrarySnapshotTest.parseTree("/sample/xml/vehicles-1.0.xml", "vehicles", "1.0"));
+  }
+
+  @Test
+  public void testExtensionReferences() {
+    assertEquals(Arrays.asList("Ambulance", "FireTruck"), uniqueCodes(index.getExtensionReferences("ext-status")));
+    assertTrue(index.getExtensionReferences("ext-unknown").isEmpty());
+    assertEquals(1, index.getExtensionIds().size());
+  }
+
+  @Test
+  public void testHierarchyPrefix() {
+    assertEquals(Arrays.asList("Ground", "Ambulance", "FireTruck"), uniqueCodes(index.getNodesUnder("1.1")));
+    assertEquals(Arrays.asList("Helicopter"), uniqueCodes(index.getNodesUnder("1.2.1")));
+    assertEquals(6, index.getNodesUnder("1").size());
+    assertTrue(index.getNodesUnder("1.4").isEmpty());
+    assertTrue(index.getNodesUnder("1.1.3").isEmpty());
+  }
+
+  @Test
+  public void testIconReferences() {
+    assertEquals(Arrays.asList("Helicopter"), uniqueCodes(index.getIconReferences("Helicopter")));
+    assertEquals(Arrays.asList("Route"), uniqueCodes(index.getIconReferences("Arrow")));
+    assertTrue(index.getIconReferences("Unknown").isEmpty());
+  }
+
+  @Test
+  public void testIndexSnapshot() throws Exception {
+    final File snapshotFile = new File(temporaryFolder.getRoot(), "vehicles-1.0.snapshot");
+    LibrarySnapshot.write((LibraryTree) index.getLibrary(), new File(this.getClass().getResource("/sample/xml/vehicles-1.0.xml")
+        .toURI()), snapshotFile);
+    final LibraryIndex snapshotIndex = new LibraryIndex(LibrarySnapshot.open(snapshotFile));
+    assertEquals(index.getNode("Helicopter"), snapshotIndex.getNode("Helicopter"));
+    assertEquals(index.getNodesUnder("1.1"), snapshotIndex.getNodesUnder("1.1"));
+  }
+
+  @Test
+  public void testUniqueCodeLookup() {
+    final int helicopter = index.getNode("Helicopter");
+    assertEquals("1.2.1", index.getLibrary().getHierarchyCode(helicopter));
+    assertEquals(-1, index.getNode("Submarine"));
+  }
+
+  @Test
+  public void testValidateLibraryIndex() throws LibraryValidatorException {
+    final String baseDirectory = this.getClass().getResource("/sample/libraries").getPath();
+    final LibraryIndex emergency = LibraryValidator.validateLibraryIndex(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1");
+    final int accident = emergency.getNode("Accident");
+    assertTrue(accident >= 0);
+    assertEquals(3, emergency.getLibrary().getCustomPropertyCount(accident));
+    assertTrue(emergency.getNodesUnder(emergency.getLibrary().getHierarchyCode(accident)).contains(accident));
+  }
+}
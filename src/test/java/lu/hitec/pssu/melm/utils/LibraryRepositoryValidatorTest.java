@@ -0,0 +1,95 @@
+package lu.hitec.pssu.melm.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.Nonnull;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.junit.Test;
+
+public class LibraryRepositoryValidatorTest {
+
+  @Test
+  public void testDiscoverLibraryVersions() throws LibraryValidatorException {
+    final String baseDirectory = this.getClass().getResource("/sample/libraries").getPath();
+    final List<LibraryVersion> libraryVersions = LibraryRepositoryValidator.discoverLibraryVersions(baseDirectory);
+    assertTrue(libraryVersions.contains(new LibraryVersion("emergency.lu", "1.1")));
+    assertTrue(libraryVersions.contains(new LibraryVersion("emergency.lu.wrong.name", "1.0")));
+  }
+
+  @Test(expected = LibraryValidatorException.class)
+  public void testDiscoverLibraryVersionsMissingBaseDirectory() throws LibraryValidatorException {
+    final String baseDirectory = this.getClass().getResource("/sample/libraries").getPath();
+    LibraryRepositoryValidator.discoverLibraryVersions(baseDirectory + "/missing");
+  }
+
+  @Test
+  public void testValidateRepository() throws LibraryValidatorException {
+    final String baseDirectory = this.getClass().getResource("/sample/libraries").getPath();
+    final LibraryValidationReport report = LibraryRepositoryValidator.validateRepository(LibraryValidator.XSD_PATH, baseDirectory);
+    assertFalse(report.isAllValid());
+    assertEquals(1, report.getValid().size());
+
+    final LibraryValidationResult valid = report.getValid().get(0);
+    assertEquals(new LibraryVersion("emergency.lu", "1.1"), valid.getLibraryVersion());
+    assertEquals("points", valid.getDescription().getLibraryType());
+    for (final LibraryValidationResult failed : report.getFailed()) {
+      assertNotNull(failed.getError());
+    }
+  }
+
+  @Test
+  public void testValidateRepositoryWithExecutor() throws LibraryValidatorException {
+    final String baseDirectory = this.getClass().getResource("/sample/libraries").getPath();
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final LibraryValidationReport report = LibraryRepositoryValidator.validateRepository(LibraryValidator.XSD_PATH, baseDirectory,
+          executor);
+      assertEquals(LibraryRepositoryValidator.discoverLibraryVersions(baseDirectory).size(), report.getResults().size());
+      assertEquals(1, report.getValid().size());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testValidateRepositoryUnexpectedFailure() throws LibraryValidatorException {
+    final String baseDirectory = this.getClass().getResource("/sample/libraries").getPath();
+    LibraryValidator.setMetrics(new ValidationMetrics() {
+      @Override
+      public void recordBytesRead(final long bytes) {
+      }
+
+      @Override
+      public void recordFailure(@Nonnull final ValidationFailure failure) {
+      }
+
+      @Override
+      public void recordNodes(final int nodes) {
+        throw new NegativeArraySizeException();
+      }
+
+      @Override
+      public void recordPhase(@Nonnull final ValidationPhase phase, final long durationNanos) {
+      }
+    });
+    try {
+      final LibraryValidationReport report = LibraryRepositoryValidator.validateRepository(LibraryValidator.XSD_PATH, baseDirectory);
+      assertEquals(LibraryRepositoryValidator.discoverLibraryVersions(baseDirectory).size(), report.getResults().size());
+      assertTrue(report.getValid().isEmpty());
+      for (final LibraryValidationResult failed : report.getFailed()) {
+        assertNotNull(failed.getError());
+      }
+    } finally {
+      LibraryValidator.setMetrics(ValidationMetrics.NONE);
+    }
+  }
+}
@@ -0,0 +1,175 @@
+package lu.hitec.pssu.melm.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LibrarySnapshotTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static void assertSameLibrary(final FlatLibrary expected, final FlatLibrary actual) {
+    final LibraryDescription description = expected.getLibraryDescription();
+    assertEquals(description.getLibraryType(), actual.getLibraryDescription().getLibraryType());
+    assertEquals(description.getLibraryVersion(), actual.getLibraryDescription().getLibraryVersion());
+    assertEquals(description.getLibraryName(), actual.getLibraryDescription().getLibraryName());
+    assertEquals(description.getLibraryDisplayName(), actual.getLibraryDescription().getLibraryDisplayName());
+    assertEquals(description.getLibraryIcon(), actual.getLibraryDescription().getLibraryIcon());
+
+    assertEquals(expected.getNodeCount(), actual.getNodeCount());
+    for (int node = 0; node < expected.getNodeCount(); node++) {
+      assertEquals(expected.getParent(node), actual.getParent(node));
+      assertEquals(expected.getFirstChild(node), actual.getFirstChild(node));
+      assertEquals(expected.getNextSibling(node), actual.getNextSibling(node));
+      assertEquals(expected.getUniqueCode(node), actual.getUniqueCode(node));
+      assertEquals(expected.getHierarchyCode(node), actual.getHierarchyCode(node));
+      assertEquals(expected.getChoiceVar(node), actual.getChoiceVar(node));
+      assertEquals(expected.getChoiceValue(node), actual.getChoiceValue(node));
+      assertEquals(expected.getNodeDescription(node), actual.getNodeDescription(node));
+      assertEquals(expected.getElementType(node), actual.getElementType(node));
+      assertEquals(expected.getElementDescription(node), actual.getElementDescription(node));
+      assertEquals(expected.getExtensionRef(node), actual.getExtensionRef(node));
+      assertEquals(expected.isExtensionMandatory(node), actual.isExtensionMandatory(node));
+      assertEquals(expected.getIconCount(node), actual.getIconCount(node));
+      for (int icon = 0; icon < expected.getIconCount(node); icon++) {
+        assertEquals(expected.getIconRole(node, icon), actual.getIconRole(node, icon));
+        assertEquals(expected.getIconFile(node, icon), actual.getIconFile(node, icon));
+        assertEquals(expected.getIconAnchor(node, icon), actual.getIconAnchor(node, icon));
+      }
+      assertEquals(expected.getCustomPropertyCount(node), actual.getCustomPropertyCount(node));
+      for (int property = 0; property < expected.getCustomPropertyCount(node); property++) {
+        assertEquals(expected.getCustomPropertyKey(node, property), actual.getCustomPropertyKey(node, property));
+        assertEquals(expected.getCustomPropertyType(node, property), actual.getCustomPropertyType(node, property));
+      }
+    }
+
+    assertEquals(expected.getExtensionCount(), actual.getExtensionCount());
+    for (int extension = 0; extension < expected.getExtensionCount(); extension++) {
+      assertEquals(expected.getExtensionId(extension), actual.getExtensionId(extension));
+      assertEquals(expected.getExtensionVar(extension), actual.getExtensionVar(extension));
+      assertEquals(expected.getOptionCount(extension), actual.getOptionCount(extension));
+      for (int option = 0; option < expected.getOptionCount(extension); option++) {
+        assertEquals(expected.getOptionValue(extension, option), actual.getOptionValue(extension, option));
+        assertEquals(expected.getOptionCode(extension, option), actual.getOptionCode(extension, option));
+        assertEquals(expected.getOptionDescription(extension, option), actual.getOptionDescription(extension, option));
+        assertEquals(expected.getOptionOverlayIcon(extension, option), actual.getOptionOverlayIcon(extension, option));
+      }
+    }
+  }
+
+  static LibraryTree parseTree(final String resource, final String libraryName, final String version) throws Exception {
+    final LibraryTreeHandler treeHandler = new LibraryTreeHandler();
+    final LibraryDescription description = LibraryValidator.validateInSinglePass(new File(LibrarySnapshotTest.class.getResource(
+        resource).toURI()), SchemaRegistry.getBundledSchema(), libraryName, version, treeHandler);
+    return treeHandler.build(description);
+  }
+
+  @Test
+  public void testNestedHierarchy() throws Exception {
+    final LibraryTree tree = parseTree("/sample/xml/vehicles-1.0.xml", "vehicles", "1.0");
+    assertEquals(6, tree.getNodeCount());
+    assertEquals("vehicles.png", tree.getLibraryDescription().getLibraryIcon());
+
+    final int ground = tree.getFirstRootNode();
+    assertEquals("Ground", tree.getUniqueCode(ground));
+    assertEquals("Category", tree.getChoiceVar(ground));
+    assertEquals(-1, tree.getParent(ground));
+    assertEquals(ElementType.NONE, tree.getElementType(ground));
+
+    final int ambulance = tree.getFirstChild(ground);
+    assertEquals("Ambulance", tree.getUniqueCode(ambulance));
+    assertEquals("Type", tree.getChoiceVar(ambulance));
+    assertEquals(ground, tree.getParent(ambulance));
+    assertEquals(ElementType.POINT, tree.getElementType(ambulance));
+    assertEquals("ext-status", tree.getExtensionRef(ambulance));
+    assertTrue(tree.isExtensionMandatory(ambulance));
+    assertEquals(1, tree.getIconCount(ambulance));
+    assertEquals("Ambulance", tree.getIconFile(ambulance, 0));
+    assertEquals("N", tree.getIconAnchor(ambulance, 0));
+    assertEquals(2, tree.getCustomPropertyCount(ambulance));
+    assertEquals("hospital", tree.getCustomPropertyKey(ambulance, 1));
+
+    final int fireTruck = tree.getNextSibling(ambulance);
+    assertEquals("FireTruck", tree.getUniqueCode(fireTruck));
+    assertFalse(tree.isExtensionMandatory(fireTruck));
+    assertEquals(-1, tree.getNextSibling(fireTruck));
+
+    final int route = tree.getNextSibling(tree.getNextSibling(ground));
+    assertEquals("Route", tree.getUniqueCode(route));
+    assertEquals(ElementType.LINE, tree.getElementType(route));
+    assertEquals(2, tree.getIconCount(route));
+    assertEquals("line-end-icon", tree.getIconRole(route, 0));
+    assertEquals("Arrow", tree.getIconFile(route, 0));
+
+    assertEquals(1, tree.getExtensionCount());
+    assertEquals("Status", tree.getExtensionVar(0));
+    assertEquals(2, tree.getOptionCount(0));
+    assertEquals("Busy", tree.getOptionOverlayIcon(0, 1));
+    assertEquals("Engaged on a mission", tree.getOptionDescription(0, 1));
+  }
+
+  @Test
+  public void testOpenOutdatedSnapshot() throws Exception {
+    final File xmlFile = temporaryFolder.newFile("vehicles-1.0.xml");
+    Files.copy(new File(this.getClass().getResource("/sample/xml/vehicles-1.0.xml").toURI()).toPath(), xmlFile.toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+    final File snapshotFile = new File(temporaryFolder.getRoot(), "vehicles-1.0.snapshot");
+    LibrarySnapshot.write(parseTree("/sample/xml/vehicles-1.0.xml", "vehicles", "1.0"), xmlFile, snapshotFile);
+    assertEquals(6, LibrarySnapshot.open(snapshotFile, xmlFile).getNodeCount());
+
+    Files.write(xmlFile.toPath(), "\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    try {
+      LibrarySnapshot.open(snapshotFile, xmlFile);
+    } catch (final LibraryValidatorException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("out of date"));
+      return;
+    }
+    throw new AssertionError("Snapshot of a changed XML was opened");
+  }
+
+  @Test
+  public void testSnapshotRoundTrip() throws Exception {
+    final LibraryTree tree = parseTree("/sample/xml/vehicles-1.0.xml", "vehicles", "1.0");
+    final File xmlFile = new File(this.getClass().getResource("/sample/xml/vehicles-1.0.xml").toURI());
+    final File snapshotFile = new File(temporaryFolder.getRoot(), "vehicles-1.0.snapshot");
+    LibrarySnapshot.write(tree, xmlFile, snapshotFile);
+    final LibrarySnapshot snapshot = LibrarySnapshot.open(snapshotFile, xmlFile);
+    assertSameLibrary(tree, snapshot);
+    assertEquals(ContentHash.hash(xmlFile), snapshot.getSourceHash());
+    assertFalse(new File(snapshotFile.getPath() + ".tmp").exists());
+  }
+
+  @Test
+  public void testValidateLibraryWithSnapshot() throws LibraryValidatorException {
+    final String baseDirectory = this.getClass().getResource("/sample/libraries").getPath();
+    final File snapshotFile = new File(temporaryFolder.getRoot(), "emergency.lu-1.1.snapshot");
+    final File xmlFile = LibraryValidator.validateLibraryWithSnapshot(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1",
+        snapshotFile);
+    assertTrue(xmlFile.isFile());
+
+    final LibraryTree tree = LibraryValidator.validateLibraryTree(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1");
+    final LibrarySnapshot snapshot = LibrarySnapshot.open(snapshotFile, xmlFile);
+    assertSameLibrary(tree, snapshot);
+    assertEquals("emergency.lu", snapshot.getLibraryDescription().getLibraryName());
+  }
+
+  @Test(expected = LibraryValidatorException.class)
+  public void testOpenCorruptedSnapshot() throws Exception {
+    final File snapshotFile = temporaryFolder.newFile("corrupted.snapshot");
+    Files.write(snapshotFile.toPath(), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+    LibrarySnapshot.open(snapshotFile);
+  }
+}
@@ -1,5 +1,7 @@
 package lu.hitec.pssu.melm.utils;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -7,15 +9,22 @@ import static org.junit.Assert.assertTrue;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
 
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class LibraryValidatorTest {
 
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   @Before
   public void setUp() throws Exception {
   }
@@ -61,6 +70,58 @@ public class LibraryValidatorTest {
     assertNull(directoryForLibrary);
   }
 
+  @Test
+  public void testCheckHeaderBrokenXmlLeftToFullValidation() throws Exception {
+    final File xml = new File(this.getClass().getResource(
+        "/sample/libraries/emergency.lu.broken.xml/1.0/emergency.lu.broken.xml-1.0/1-EMERGENCYLU_HITEC_PSSU_V1.0.xml").toURI());
+    assertNull(LibraryValidator.checkHeader(xml, "emergency.lu.broken.xml", "1.0", null));
+  }
+
+  @Test
+  public void testCheckHeaderStopsAfterDescription() throws Exception {
+    final String content = new String(Files.readAllBytes(new File(this.getClass().getResource("/sample/xml/vehicles-1.0.xml").toURI())
+        .toPath()), StandardCharsets.UTF_8);
+    final String header = content.substring(0, content.indexOf("</description>") + "</description>".length());
+    final File truncated = temporaryFolder.newFile("vehicles.xml");
+    Files.write(truncated.toPath(), (header + "<choice this is not xml").getBytes(StandardCharsets.UTF_8));
+    final LibraryDescription description = LibraryValidator.checkHeader(truncated, "vehicles", "1.0", "points");
+    assertNotNull(description);
+    assertEquals("Vehicles", description.getLibraryDisplayName());
+  }
+
+  @Test
+  public void testCheckHeaderWrongLibraryType() throws Exception {
+    final File xml = new File(this.getClass().getResource(
+        "/sample/libraries/emergency.lu.wrong.library.type/1.0/emergency.lu.wrong.library.type/1-EMERGENCYLU_HITEC_PSSU_V1.0.xml").toURI());
+    // without an expected type, the library type is left to the schema
+    assertEquals("plop", LibraryValidator.checkHeader(xml, "emergency.lu", "1.0", null).getLibraryType());
+    try {
+      LibraryValidator.checkHeader(xml, "emergency.lu", "1.0", "points");
+    } catch (final LibraryValidatorException e) {
+      assertEquals(DescriptionHandler.INCORRECT_LIBRARY_TYPE, e.getMessage());
+      return;
+    }
+    throw new AssertionError("Unexpected library type accepted");
+  }
+
+  @Test
+  public void testCheckLibraryHeader() throws LibraryValidatorException {
+    final String baseDirectory = this.getClass().getResource("/sample/libraries").getPath();
+    assertEquals("points", LibraryValidator.checkLibraryHeader(baseDirectory, "emergency.lu", "1.1", "points").getLibraryType());
+  }
+
+  @Test(expected = LibraryValidatorException.class)
+  public void testCheckLibraryHeaderUnexpectedLibraryType() throws LibraryValidatorException {
+    final String baseDirectory = this.getClass().getResource("/sample/libraries").getPath();
+    LibraryValidator.checkLibraryHeader(baseDirectory, "emergency.lu", "1.1", "areas");
+  }
+
+  @Test
+  public void testExtractLibraryTypePathFromXML() throws Exception {
+    final File xmlFile = new File(this.getClass().getResource("/sample/xml/areas-1.1.xml").toURI());
+    assertEquals("areas", LibraryValidator.extractLibraryTypePathFromXML(xmlFile));
+  }
+
   @Test
   public void testGetUnzippedDirectoryForLibraryVersionOK() throws LibraryValidatorException {
     final String baseDirectory = this.getClass().getResource("/sample/libraries").getPath();
@@ -69,6 +130,30 @@ public class LibraryValidatorTest {
     assertTrue(directoryForLibrary.exists());
   }
 
+  @Test
+  public void testVerifyIcons() throws URISyntaxException, LibraryValidatorException {
+    final File xml = new File(this.getClass().getResource("/sample/libraries/emergency.lu/1.1/emergency.lu-1.1/emergency.lu-1.1.xml")
+        .toURI());
+    final IconCheckReport report = LibraryValidator.verifyIcons(xml);
+    assertTrue(report.isComplete());
+    assertTrue(report.getOrphaned().contains("20px/Communication.png"));
+    assertTrue(report.getOrphaned().contains("100px/Communication_selected.png"));
+    assertFalse(report.getOrphaned().contains("icon.png"));
+    assertFalse(report.getOrphaned().contains("20px/Accident_selected.png"));
+  }
+
+  @Test
+  public void testVerifyIconsIncorrectIconPath() throws URISyntaxException, LibraryValidatorException {
+    final File xml = new File(this.getClass()
+        .getResource("/sample/libraries/emergency.lu.incorrect.icon.path/1.0/emergency.lu.incorrect.icon.path/1-EMERGENCYLU_HITEC_PSSU_V1.0.xml")
+        .toURI());
+    final IconCheckReport report = LibraryValidator.verifyIcons(xml);
+    assertFalse(report.isComplete());
+    assertEquals(1, report.getMissing().size());
+    assertTrue(report.getMissing().contains("SymbolsPOI/POIG.png"));
+    assertTrue(report.getOrphaned().contains("SymbolsPOI/POI.png"));
+  }
+
   @Test(expected = LibraryValidatorException.class)
   public void testValidateAreasXML() throws IOException, URISyntaxException, LibraryValidatorException {
     final File xml = new File(this.getClass().getResource("/sample/xml/areas-1.1.xml").toURI());
@@ -90,6 +175,20 @@ public class LibraryValidatorTest {
     LibraryValidator.validateLibrary(xsdPath, baseDirectory, "emergency.lu.incorrect.icon.path", "1.0");
   }
 
+  @Test
+  public void testValidateLibraryFileIncorrectIconPath() throws URISyntaxException {
+    final File xml = new File(this.getClass()
+        .getResource("/sample/libraries/emergency.lu.incorrect.icon.path/1.0/emergency.lu.incorrect.icon.path/1-EMERGENCYLU_HITEC_PSSU_V1.0.xml")
+        .toURI());
+    try {
+      LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, xml, "emergency.lu", "1.0");
+    } catch (final LibraryValidatorException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("SymbolsPOI/POIG.png"));
+      return;
+    }
+    throw new AssertionError("Library with a missing icon was accepted");
+  }
+
   @Test(expected = LibraryValidatorException.class)
   public void testValidateLibraryNOK() throws IOException, LibraryValidatorException {
     final String baseDirectory = this.getClass().getResource("/sample/libraries").getPath();
@@ -118,6 +217,41 @@ public class LibraryValidatorTest {
     LibraryValidator.validateLibrary(xsdPath, baseDirectory, "emergency.lu.wrong.name", "1.0");
   }
 
+  @Test
+  public void testValidateInSinglePass() throws URISyntaxException, LibraryValidatorException {
+    final File xml = new File(this.getClass().getResource("/sample/xml/ocha_activity-1.0.xml").toURI());
+    final LibraryDescription description = LibraryValidator.validateInSinglePass(xml, SchemaRegistry.getBundledSchema(),
+        "ocha_activity", "1.0");
+    assertEquals("points", description.getLibraryType());
+    assertEquals("1.0", description.getLibraryVersion());
+    assertEquals("ocha_activity", description.getLibraryName());
+    assertEquals("OCHA Humanitarian - Activity", description.getLibraryDisplayName());
+    assertEquals("activity_ocha.png", description.getLibraryIcon());
+  }
+
+  @Test
+  public void testValidateInSinglePassInconsistentHierarchy() throws IOException, URISyntaxException {
+    final File source = new File(this.getClass().getResource("/sample/libraries/emergency.lu/1.1/emergency.lu-1.1/emergency.lu-1.1.xml")
+        .toURI());
+    final String content = new String(Files.readAllBytes(source.toPath()), StandardCharsets.UTF_8);
+    final File xml = temporaryFolder.newFile("emergency.lu-1.1.xml");
+    Files.write(xml.toPath(), content.replace("unique-code=\"Fire\" choice-value=\"Fire\"", "unique-code=\"Fire\" choice-value=\"Firearm\"")
+        .getBytes(StandardCharsets.UTF_8));
+    try {
+      LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, xml, "emergency.lu", "1.1");
+    } catch (final LibraryValidatorException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Library hierarchy is inconsistent"));
+      return;
+    }
+    throw new AssertionError("Inconsistent hierarchy was accepted");
+  }
+
+  @Test(expected = LibraryValidatorException.class)
+  public void testValidateInSinglePassInvalidXML() throws URISyntaxException, LibraryValidatorException {
+    final File xml = new File(this.getClass().getResource("/sample/xml/1-EMERGENCYLU_WRONG_UNIQUE_CODE.xml").toURI());
+    LibraryValidator.validateInSinglePass(xml, SchemaRegistry.getBundledSchema(), "emergency.lu", "1.0");
+  }
+
   @Test
   public void testValidateNameAndVersion() throws Exception {
     final File xmlFile = new File(this.getClass().getResource("/sample/xml/NATO_AirTrack-1.0.xml").toURI());
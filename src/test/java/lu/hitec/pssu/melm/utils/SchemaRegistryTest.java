@@ -0,0 +1,81 @@
+package lu.hitec.pssu.melm.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.validation.Validator;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SchemaRegistryTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @After
+  public void tearDown() throws Exception {
+    SchemaRegistry.clear();
+  }
+
+  @Test
+  public void testBundledSchemaMatchesFileSchema() throws LibraryValidatorException, URISyntaxException {
+    final File xsd = new File(this.getClass().getResource(LibraryValidator.XSD_PATH).toURI());
+    assertEquals(SchemaRegistry.getSchema(xsd).getFingerprint(), SchemaRegistry.getBundledSchema().getFingerprint());
+    assertSame(SchemaRegistry.getBundledSchema(), SchemaRegistry.getSchema(LibraryValidator.XSD_PATH));
+  }
+
+  @Test
+  public void testSchemaCompiledOnce() throws LibraryValidatorException, URISyntaxException {
+    final File xsd = new File(this.getClass().getResource(LibraryValidator.XSD_PATH).toURI());
+    assertSame(SchemaRegistry.getSchema(xsd), SchemaRegistry.getSchema(xsd.getPath()));
+  }
+
+  @Test
+  public void testSchemaRecompiledWhenModified() throws Exception {
+    final File xsd = temporaryFolder.newFile("mapelement-hierarchy.xsd");
+    try (InputStream in = this.getClass().getResourceAsStream(LibraryValidator.XSD_PATH)) {
+      Files.copy(in, xsd.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    final CompiledSchema first = SchemaRegistry.getSchema(xsd);
+    xsd.setLastModified(xsd.lastModified() - 10000L);
+    final CompiledSchema second = SchemaRegistry.getSchema(xsd);
+    assertNotSame(first, second);
+    assertEquals(first.getFingerprint(), second.getFingerprint());
+  }
+
+  @Test
+  public void testValidatorPerThread() throws Exception {
+    final CompiledSchema schema = SchemaRegistry.getBundledSchema();
+    final Validator validator = schema.getValidator();
+    assertSame(validator, schema.getValidator());
+
+    final AtomicReference<Validator> other = new AtomicReference<>();
+    final Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        other.set(schema.getValidator());
+      }
+    });
+    thread.start();
+    thread.join();
+    assertNotSame(validator, other.get());
+  }
+
+  @Test(expected = LibraryValidatorException.class)
+  public void testMissingSchema() throws LibraryValidatorException {
+    SchemaRegistry.getSchema(new File(temporaryFolder.getRoot(), "missing.xsd"));
+  }
+}
@@ -0,0 +1,30 @@
+package lu.hitec.pssu.melm.utils;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Fixture helpers shared by the tests working on copies of the sample libraries.
+ */
+final class TestFiles {
+
+  private TestFiles() {
+  }
+
+  /**
+   * Copies a file or a folder tree, creating the target folder and its parents when missing.
+   */
+  static void copy(final File source, final File target) throws IOException {
+    if (source.isDirectory()) {
+      assertTrue(target.isDirectory() || target.mkdirs());
+      for (final File child : source.listFiles()) {
+        copy(child, new File(target, child.getName()));
+      }
+    } else {
+      Files.copy(source.toPath(), target.toPath());
+    }
+  }
+}
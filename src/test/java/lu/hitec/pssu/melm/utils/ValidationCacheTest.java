@@ -0,0 +1,168 @@
+package lu.hitec.pssu.melm.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import lu.hitec.pssu.melm.exceptions.LibraryValidatorException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.SAXException;
+
+public class ValidationCacheTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private String baseDirectory;
+
+  private File cacheFile;
+
+  @Before
+  public void setUp() throws Exception {
+    final File base = temporaryFolder.newFolder("libraries");
+    TestFiles.copy(new File(this.getClass().getResource("/sample/libraries/emergency.lu").toURI()), new File(base, "emergency.lu"));
+    TestFiles.copy(new File(this.getClass().getResource("/sample/libraries/emergency.lu.wrong.name").toURI()), new File(base,
+        "emergency.lu.wrong.name"));
+    TestFiles.copy(new File(this.getClass().getResource("/sample/libraries/emergency.lu.broken.xml").toURI()), new File(base,
+        "emergency.lu.broken.xml"));
+    baseDirectory = base.getPath();
+    cacheFile = new File(temporaryFolder.getRoot(), "validation.cache");
+  }
+
+  @Test
+  public void testCorruptRecordDiscarded() throws LibraryValidatorException, IOException {
+    try (ValidationCache cache = ValidationCache.open(cacheFile)) {
+      LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1", cache);
+    }
+    final byte[] content = Files.readAllBytes(cacheFile.toPath());
+    // negative record length
+    content[8] = (byte) 0x80;
+    Files.write(cacheFile.toPath(), content);
+    try (ValidationCache cache = ValidationCache.open(cacheFile)) {
+      assertEquals(0, cache.size());
+    }
+    // library name longer than its record
+    content[8] = 0;
+    content[12] = (byte) 0xff;
+    content[13] = (byte) 0xff;
+    Files.write(cacheFile.toPath(), content);
+    try (ValidationCache cache = ValidationCache.open(cacheFile)) {
+      assertEquals(0, cache.size());
+      LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1", cache);
+    }
+    try (ValidationCache cache = ValidationCache.open(cacheFile)) {
+      assertEquals(1, cache.size());
+    }
+  }
+
+  @Test
+  public void testHeaderMismatchNotCached() throws LibraryValidatorException, IOException {
+    try (ValidationCache cache = ValidationCache.open(cacheFile)) {
+      try {
+        LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu.wrong.name", "1.0", cache);
+      } catch (final LibraryValidatorException e) {
+        assertEquals(0, cache.size());
+        return;
+      }
+    }
+    throw new AssertionError("Mismatching library was accepted");
+  }
+
+  @Test
+  public void testInvalidVerdictCached() throws LibraryValidatorException, IOException {
+    String message = null;
+    try (ValidationCache cache = ValidationCache.open(cacheFile)) {
+      LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu.broken.xml", "1.0", cache);
+    } catch (final LibraryValidatorException e) {
+      message = e.getMessage();
+    }
+    assertNotNull(message);
+
+    try (ValidationCache cache = ValidationCache.open(cacheFile)) {
+      assertEquals(1, cache.size());
+      LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu.broken.xml", "1.0", cache);
+    } catch (final LibraryValidatorException e) {
+      assertEquals(message, e.getMessage());
+      return;
+    }
+    throw new AssertionError("Cached invalid library was accepted");
+  }
+
+  @Test
+  public void testLongMessageCached() throws LibraryValidatorException, IOException {
+    final LibraryVersion libraryVersion = new LibraryVersion("emergency.lu", "1.1");
+    final byte[] key = new byte[20];
+    final StringBuilder message = new StringBuilder();
+    while (message.length() < 100000) {
+      message.append("Icons referenced in xml are missing: [20px/\u00e9v\u00e9nement.png] ");
+    }
+    try (ValidationCache cache = ValidationCache.open(cacheFile)) {
+      cache.put(libraryVersion, ValidationCache.Verdict.invalid(key, message.toString()));
+    }
+    try (ValidationCache cache = ValidationCache.open(cacheFile)) {
+      final String cached = cache.get(libraryVersion, key).getMessage();
+      assertTrue(cached.endsWith(" ..."));
+      assertTrue(message.toString().startsWith(cached.substring(0, cached.length() - " ...".length())));
+    }
+  }
+
+  @Test
+  public void testReadFailureNotCached() {
+    assertTrue(LibraryValidator.isReadFailure(new LibraryValidatorException("Error", new IOException("Disk error"))));
+    assertTrue(LibraryValidator.isReadFailure(new LibraryValidatorException("Error", new SAXException(new IOException("Disk error")))));
+    assertFalse(LibraryValidator.isReadFailure(new LibraryValidatorException("Error", new SAXException("Invalid content"))));
+    assertFalse(LibraryValidator.isReadFailure(new LibraryValidatorException("Icons referenced in xml are missing: []")));
+  }
+
+  @Test
+  public void testTruncatedRecordIgnored() throws LibraryValidatorException, IOException {
+    try (ValidationCache cache = ValidationCache.open(cacheFile)) {
+      LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1", cache);
+    }
+    try (FileOutputStream out = new FileOutputStream(cacheFile, true)) {
+      out.write(new byte[] { 0, 0, 1, 0, 42 });
+    }
+    try (ValidationCache cache = ValidationCache.open(cacheFile)) {
+      assertEquals(1, cache.size());
+      LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu.broken.xml", "1.0", cache);
+    } catch (final LibraryValidatorException e) {
+      // expected
+    }
+    try (ValidationCache cache = ValidationCache.open(cacheFile)) {
+      assertEquals(2, cache.size());
+    }
+  }
+
+  @Test
+  public void testValidVerdictCachedUntilContentChanges() throws LibraryValidatorException, IOException {
+    final LibraryVersion libraryVersion = new LibraryVersion("emergency.lu", "1.1");
+    final File xmlFile;
+    try (ValidationCache cache = ValidationCache.open(cacheFile)) {
+      xmlFile = LibraryValidator.validateLibrary(LibraryValidator.XSD_PATH, baseDirectory, "emergency.lu", "1.1", cache);
+    }
+
+    final CompiledSchema schema = SchemaRegistry.getBundledSchema();
+    try (ValidationCache cache = ValidationCache.open(cacheFile)) {
+      final ValidationCache.Verdict verdict = cache.get(libraryVersion, ValidationCache.computeKey(schema, xmlFile.getParentFile()));
+      assertNotNull(verdict);
+      assertTrue(verdict.isValid());
+      assertEquals("points", verdict.getDescription().getLibraryType());
+
+      try (FileOutputStream out = new FileOutputStream(new File(xmlFile.getParentFile(), "20px/Fire.png"), true)) {
+        out.write(0);
+      }
+      assertNull(cache.get(libraryVersion, ValidationCache.computeKey(schema, xmlFile.getParentFile())));
+    }
+  }
+}
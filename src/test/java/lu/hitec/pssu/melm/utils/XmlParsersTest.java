@@ -0,0 +1,72 @@
+package lu.hitec.pssu.melm.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.ls.LSInput;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+public class XmlParsersTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testBundledSchemaResolvedLocally() throws Exception {
+    final LSInput input = LocalResourceResolver.INSTANCE.resolveResource("http://www.w3.org/2001/XMLSchema",
+        LocalResourceResolver.NAMESPACE, null, "mapelement-hierarchy.xsd", null);
+    assertNotNull(input);
+    assertTrue(input.getByteStream().read() >= 0);
+    assertNotNull(LocalResourceResolver.INSTANCE.resolveEntity(null, "http://example.com/xsd/mapelement-hierarchy.xsd"));
+    assertNull(LocalResourceResolver.INSTANCE.resolveResource("http://www.w3.org/2001/XMLSchema", "http://example.com/other", null,
+        "http://example.com/other.xsd", null));
+  }
+
+  @Test
+  public void testBundledSchemaInputSettable() throws Exception {
+    final LSInput input = LocalResourceResolver.INSTANCE.resolveResource("http://www.w3.org/2001/XMLSchema",
+        LocalResourceResolver.NAMESPACE, null, "mapelement-hierarchy.xsd", null);
+    final InputStream byteStream = new ByteArrayInputStream(new byte[0]);
+    input.setByteStream(byteStream);
+    input.setEncoding("UTF-8");
+    input.setStringData("<schema/>");
+    assertSame(byteStream, input.getByteStream());
+    assertEquals("UTF-8", input.getEncoding());
+    assertEquals("<schema/>", input.getStringData());
+    input.setByteStream(null);
+    assertTrue(input.getByteStream().read() >= 0);
+  }
+
+  @Test(expected = SAXException.class)
+  public void testExternalEntityRefused() throws Exception {
+    final File target = temporaryFolder.newFile("secret.txt");
+    Files.write(target.toPath(), "secret".getBytes(StandardCharsets.UTF_8));
+    final File xml = temporaryFolder.newFile("entity.xml");
+    Files.write(xml.toPath(), ("<?xml version=\"1.0\"?>\n<!DOCTYPE elements [<!ENTITY secret SYSTEM \"" + target.toURI() + "\">]>\n"
+        + "<elements><description><library-type>&secret;</library-type></description></elements>").getBytes(StandardCharsets.UTF_8));
+    LibraryValidator.extractLibraryTypePathFromXML(xml);
+  }
+
+  @Test
+  public void testReaderReusedPerThread() throws Exception {
+    final XMLReader first = XmlParsers.getXMLReader(new DefaultHandler());
+    final DefaultHandler handler = new DefaultHandler();
+    final XMLReader second = XmlParsers.getXMLReader(handler);
+    assertSame(first, second);
+    assertSame(handler, second.getContentHandler());
+  }
+}